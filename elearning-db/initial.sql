@@ -1,6 +1,6 @@
 CREATE EXTENSION IF NOT EXISTS "uuid-ossp";
-CREATE TYPE enrollmentStatus AS ENUM ('PENDING', 'ACCEPTED', 'REJECTED');
-CREATE TYPE courseStatus AS ENUM ('ACCEPTED', 'PENDING');
+CREATE TYPE enrollmentStatus AS ENUM ('PENDING', 'ACCEPTED', 'REJECTED', 'WAITLISTED');
+CREATE TYPE courseStatus AS ENUM ('ACCEPTED', 'PENDING', 'DELETED');
 
 CREATE TABLE Course (
     id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
@@ -14,6 +14,20 @@ CREATE TABLE Course (
     status courseStatus NOT NULL
 );
 
+-- Courses marked as DELETED whose enrollments and reviews are still being
+-- removed by CoursePurgeService. Rows go away with the course.
+CREATE TABLE CoursePurge (
+    courseId UUID PRIMARY KEY REFERENCES Course (id) ON DELETE CASCADE,
+    requestedAt TIMESTAMP NOT NULL DEFAULT now()
+);
+
+-- Users deleted in the user service whose data is still being removed by
+-- UserPurgeService
+CREATE TABLE UserPurge (
+    userId UUID PRIMARY KEY,
+    requestedAt TIMESTAMP NOT NULL DEFAULT now()
+);
+
 CREATE TABLE Review (
     id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
     studentId UUID NOT NULL,
@@ -23,18 +37,315 @@ CREATE TABLE Review (
     UNIQUE (studentId, courseId)
 );
 
+-- Partitioned by month of creation. Monthly partitions are created ahead of
+-- time and retired by NotificationPartitionService; rows outside of them land
+-- in the default partition, which also keeps the unread rows of retired
+-- partitions.
 CREATE TABLE Notification (
-    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    id UUID NOT NULL DEFAULT uuid_generate_v4(),
     userId UUID NOT NULL,
     title VARCHAR(255) NOT NULL,
     body VARCHAR(1024) NOT NULL,
-    isRead BOOLEAN NOT NULL
-);
+    isRead BOOLEAN NOT NULL,
+    createdAt TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (id, createdAt)
+) PARTITION BY RANGE (createdAt);
+
+CREATE INDEX Notification_userId_createdAt ON Notification (userId, createdAt);
+
+-- Unread notifications are listed whatever their age
+CREATE INDEX Notification_userId_unread ON Notification (userId) WHERE NOT isRead;
+
+CREATE TABLE Notification_default PARTITION OF Notification DEFAULT;
+
+-- Detached notification partitions are moved here when archiving is enabled
+CREATE SCHEMA archive;
 
 CREATE TABLE Enrollment (
     id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
     studentId UUID NOT NULL,
     courseId UUID NOT NULL REFERENCES Course (id) ON DELETE CASCADE,
     status enrollmentStatus NOT NULL,
+    requestedAt TIMESTAMP NOT NULL DEFAULT now(),
     UNIQUE (studentId, courseId)
 );
+
+CREATE INDEX Enrollment_courseId_status_requestedAt ON Enrollment (courseId, status, requestedAt);
+
+-- Courses that ended long ago are moved to the archive schema together with
+-- their enrollments and reviews by CourseArchiveService
+CREATE INDEX Course_endDate ON Course (endDate);
+
+CREATE TABLE archive.Course (LIKE Course INCLUDING DEFAULTS INCLUDING INDEXES);
+CREATE TABLE archive.Enrollment (LIKE Enrollment INCLUDING DEFAULTS INCLUDING INDEXES);
+CREATE TABLE archive.Review (LIKE Review INCLUDING DEFAULTS INCLUDING INDEXES);
+
+CREATE INDEX Review_courseId ON archive.Review (courseId);
+
+-- Lookups of a deleted user's data by UserPurgeService
+CREATE INDEX Course_instructorId ON Course (instructorId);
+CREATE INDEX Course_instructorId ON archive.Course (instructorId);
+
+CREATE TABLE ProcessedCommand (
+    id UUID PRIMARY KEY,
+    processedAt TIMESTAMP NOT NULL DEFAULT now()
+);
+
+CREATE INDEX ProcessedCommand_processedAt ON ProcessedCommand (processedAt);
+
+CREATE TYPE enrollmentRequestStatus AS ENUM ('PENDING', 'SUCCEEDED', 'FAILED');
+
+CREATE TABLE EnrollmentRequest (
+    id UUID PRIMARY KEY,
+    userId UUID NOT NULL,
+    operation VARCHAR(16) NOT NULL,
+    status enrollmentRequestStatus NOT NULL,
+    reason VARCHAR(64),
+    enrollmentId UUID,
+    createdAt TIMESTAMP NOT NULL DEFAULT now(),
+    completedAt TIMESTAMP
+);
+
+CREATE INDEX EnrollmentRequest_createdAt ON EnrollmentRequest (createdAt);
+CREATE INDEX EnrollmentRequest_userId ON EnrollmentRequest (userId);
+
+-- Enrollment command logic. Each function applies one command together with
+-- its notifications so that the worker needs a single round trip per
+-- command. p_now is the current time in epoch seconds, passed by the service
+-- so that its clock stays authoritative.
+
+CREATE FUNCTION enrollment_notify(p_user_id UUID, p_body TEXT) RETURNS VOID AS $$
+    INSERT INTO Notification (userId, title, body, isRead)
+    VALUES (p_user_id, 'Course enrollment status', p_body, false);
+$$ LANGUAGE sql;
+
+-- 1-based position of a waitlisted enrollment, 0 if it is not waitlisted
+CREATE FUNCTION waitlist_position(p_enrollment_id UUID) RETURNS INTEGER AS $$
+    SELECT COUNT(Other.id)::INTEGER
+    FROM
+        Enrollment
+        JOIN Enrollment AS Other
+            ON Other.courseId = Enrollment.courseId
+            AND Other.status = 'WAITLISTED'
+            AND (Other.requestedAt, Other.id) <= (Enrollment.requestedAt, Enrollment.id)
+    WHERE
+        Enrollment.id = p_enrollment_id
+        AND Enrollment.status = 'WAITLISTED';
+$$ LANGUAGE sql STABLE;
+
+-- Moves the head of the course's waitlist to PENDING, one enrollment per seat
+-- that is neither accepted nor already held by a pending request, so repeated
+-- calls don't promote another batch while earlier promotions await a decision.
+CREATE FUNCTION promote_waitlisted(p_course_id UUID, p_now BIGINT) RETURNS VOID AS $$
+DECLARE
+    v_name VARCHAR;
+    v_free_seats INTEGER;
+BEGIN
+    -- Locking the course keeps concurrent cancellations from promoting the
+    -- same seat twice
+    SELECT name, capacity INTO v_name, v_free_seats
+    FROM Course
+    WHERE id = p_course_id AND status = 'ACCEPTED' AND startDate > p_now
+    FOR UPDATE;
+    IF NOT FOUND THEN
+        RETURN;
+    END IF;
+    v_free_seats := v_free_seats - (
+        SELECT COUNT(id) FROM Enrollment WHERE courseId = p_course_id AND status IN ('ACCEPTED', 'PENDING'));
+    IF v_free_seats <= 0 THEN
+        RETURN;
+    END IF;
+    WITH Promoted AS (
+        UPDATE Enrollment SET status = 'PENDING'
+        WHERE id IN (
+            SELECT id FROM Enrollment
+            WHERE courseId = p_course_id AND status = 'WAITLISTED'
+            ORDER BY requestedAt, id
+            LIMIT v_free_seats)
+        RETURNING studentId)
+    INSERT INTO Notification (userId, title, body, isRead)
+    SELECT studentId, 'Course enrollment status', 'A seat opened up in ''' || v_name
+        || ''', your enrollment request was moved from the waitlist and is now pending.', false
+    FROM Promoted;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION create_enrollment(p_student_id UUID, p_course_id UUID, p_now BIGINT)
+RETURNS TABLE (outcome TEXT, enrollment_id UUID, course_id UUID) AS $$
+DECLARE
+    v_course Course%ROWTYPE;
+    v_accepted INTEGER;
+BEGIN
+    course_id := p_course_id;
+    SELECT id INTO enrollment_id FROM Enrollment WHERE studentId = p_student_id AND courseId = p_course_id;
+    IF FOUND THEN
+        PERFORM enrollment_notify(p_student_id, 'Can''t enroll in course with id: ' || p_course_id
+            || ' since you already had an enrollment request in it.');
+        outcome := 'ALREADY_ENROLLED';
+        RETURN NEXT;
+        RETURN;
+    END IF;
+    SELECT * INTO v_course FROM Course WHERE id = p_course_id AND status = 'ACCEPTED' AND startDate > p_now;
+    IF NOT FOUND THEN
+        PERFORM enrollment_notify(p_student_id, 'Can''t enroll in course with id: ' || p_course_id
+            || ' since it was not found in future courses.');
+        outcome := 'COURSE_NOT_FOUND';
+        RETURN NEXT;
+        RETURN;
+    END IF;
+    SELECT COUNT(id) INTO v_accepted FROM Enrollment WHERE courseId = p_course_id AND status = 'ACCEPTED';
+    -- Free seats go to the head of an existing waitlist first; new requests
+    -- only queue behind the enrollments that are still waiting after that
+    IF v_course.capacity > v_accepted
+            AND EXISTS (SELECT 1 FROM Enrollment WHERE courseId = p_course_id AND status = 'WAITLISTED') THEN
+        PERFORM promote_waitlisted(p_course_id, p_now);
+    END IF;
+    IF v_course.capacity <= v_accepted
+            OR EXISTS (SELECT 1 FROM Enrollment WHERE courseId = p_course_id AND status = 'WAITLISTED') THEN
+        INSERT INTO Enrollment (studentId, courseId, status) VALUES (p_student_id, p_course_id, 'WAITLISTED')
+        RETURNING id INTO enrollment_id;
+        PERFORM enrollment_notify(p_student_id, '''' || v_course.name
+            || ''' is full, you were added to its waitlist at position ' || waitlist_position(enrollment_id) || '.');
+        outcome := 'WAITLISTED';
+        RETURN NEXT;
+        RETURN;
+    END IF;
+    INSERT INTO Enrollment (studentId, courseId, status) VALUES (p_student_id, p_course_id, 'PENDING')
+    RETURNING id INTO enrollment_id;
+    PERFORM enrollment_notify(p_student_id, 'Submitted an enrollment request for: ''' || v_course.name
+        || ''', we will get back to you once it is accepted.');
+    outcome := 'SUBMITTED';
+    RETURN NEXT;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION update_enrollment(p_instructor_id UUID, p_enrollment_id UUID, p_status TEXT, p_now BIGINT)
+RETURNS TABLE (outcome TEXT, enrollment_id UUID, course_id UUID) AS $$
+DECLARE
+    v_enrollment Enrollment%ROWTYPE;
+    v_course Course%ROWTYPE;
+    v_accepted INTEGER;
+    v_invalid_enrollment TEXT;
+BEGIN
+    enrollment_id := p_enrollment_id;
+    IF p_status NOT IN ('ACCEPTED', 'REJECTED') THEN
+        RAISE WARNING 'Received invalid status: %', p_status;
+        outcome := 'INVALID_STATUS';
+        RETURN NEXT;
+        RETURN;
+    END IF;
+    v_invalid_enrollment := 'Could not find a pending enrollment with id: ' || p_enrollment_id
+        || ' that was sent to one of your future courses.';
+    SELECT * INTO v_enrollment FROM Enrollment WHERE id = p_enrollment_id AND status = 'PENDING';
+    IF NOT FOUND THEN
+        PERFORM enrollment_notify(p_instructor_id, v_invalid_enrollment);
+        outcome := 'ENROLLMENT_NOT_FOUND';
+        RETURN NEXT;
+        RETURN;
+    END IF;
+    -- Locking the course serializes capacity checks with other decisions on it
+    SELECT * INTO v_course
+    FROM Course
+    WHERE
+        id = v_enrollment.courseId
+        AND status = 'ACCEPTED'
+        AND instructorId = p_instructor_id
+        AND (p_status = 'REJECTED' OR startDate > p_now)
+    FOR UPDATE;
+    IF NOT FOUND THEN
+        PERFORM enrollment_notify(p_instructor_id, v_invalid_enrollment);
+        outcome := 'ENROLLMENT_NOT_FOUND';
+        RETURN NEXT;
+        RETURN;
+    END IF;
+    course_id := v_course.id;
+    IF p_status = 'ACCEPTED' THEN
+        SELECT COUNT(id) INTO v_accepted FROM Enrollment WHERE courseId = v_course.id AND status = 'ACCEPTED';
+        IF v_course.capacity <= v_accepted THEN
+            PERFORM enrollment_notify(p_instructor_id, 'Can''t accept enrollment of id: ' || p_enrollment_id
+                || ' since the course is full.');
+            outcome := 'COURSE_FULL';
+            RETURN NEXT;
+            RETURN;
+        END IF;
+    END IF;
+    UPDATE Enrollment SET status = p_status::enrollmentStatus WHERE id = p_enrollment_id AND status = 'PENDING';
+    IF NOT FOUND THEN
+        outcome := 'ENROLLMENT_NOT_FOUND';
+        RETURN NEXT;
+        RETURN;
+    END IF;
+    PERFORM enrollment_notify(v_enrollment.studentId, 'Your enrollment for ' || v_course.name || ' has been '
+        || CASE WHEN p_status = 'ACCEPTED' THEN 'accepted.' ELSE 'rejected.' END);
+    IF p_status = 'REJECTED' THEN
+        PERFORM promote_waitlisted(v_course.id, p_now);
+    END IF;
+    outcome := p_status;
+    RETURN NEXT;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION delete_enrollment(p_student_id UUID, p_enrollment_id UUID, p_now BIGINT)
+RETURNS TABLE (outcome TEXT, enrollment_id UUID, course_id UUID) AS $$
+DECLARE
+    v_course_id UUID;
+    v_status enrollmentStatus;
+BEGIN
+    enrollment_id := p_enrollment_id;
+    DELETE FROM Enrollment WHERE id = p_enrollment_id AND studentId = p_student_id
+    RETURNING courseId, status INTO v_course_id, v_status;
+    IF NOT FOUND THEN
+        PERFORM enrollment_notify(p_student_id, 'Could not find an enrollment with id: ' || p_enrollment_id
+            || ' in your enrollments.');
+        outcome := 'ENROLLMENT_NOT_FOUND';
+        RETURN NEXT;
+        RETURN;
+    END IF;
+    course_id := v_course_id;
+    PERFORM enrollment_notify(p_student_id, 'Enrollment of id: ' || p_enrollment_id || ' was cancelled.');
+    -- Cancelling a waitlisted enrollment frees no seat to promote into
+    IF v_status <> 'WAITLISTED' THEN
+        PERFORM promote_waitlisted(v_course_id, p_now);
+    END IF;
+    outcome := 'CANCELLED';
+    RETURN NEXT;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Applies a CREATE, UPDATE or DELETE command, recording it in the processed
+-- command ledger and its enrollment request. Returns no row if the command
+-- was already processed, otherwise its outcome and the affected enrollment
+-- and course, if found. p_succeeded lists the outcomes that complete the
+-- request successfully.
+CREATE FUNCTION process_enrollment_command(p_command_id UUID, p_operation TEXT, p_user_id UUID,
+    p_target_id UUID, p_status TEXT, p_now BIGINT, p_succeeded TEXT[])
+RETURNS TABLE (outcome TEXT, enrollment_id UUID, course_id UUID) AS $$
+DECLARE
+    v_result RECORD;
+BEGIN
+    INSERT INTO ProcessedCommand (id) VALUES (p_command_id) ON CONFLICT DO NOTHING;
+    IF NOT FOUND THEN
+        RETURN;
+    END IF;
+    IF p_operation = 'CREATE' THEN
+        SELECT * INTO v_result FROM create_enrollment(p_user_id, p_target_id, p_now);
+    ELSIF p_operation = 'UPDATE' THEN
+        SELECT * INTO v_result FROM update_enrollment(p_user_id, p_target_id, p_status, p_now);
+    ELSIF p_operation = 'DELETE' THEN
+        SELECT * INTO v_result FROM delete_enrollment(p_user_id, p_target_id, p_now);
+    ELSE
+        RAISE EXCEPTION 'Unknown enrollment command: %', p_operation;
+    END IF;
+    outcome := v_result.outcome;
+    enrollment_id := v_result.enrollment_id;
+    course_id := v_result.course_id;
+    UPDATE EnrollmentRequest
+    SET
+        status = (CASE WHEN outcome = ANY(p_succeeded) THEN 'SUCCEEDED' ELSE 'FAILED' END)::enrollmentRequestStatus,
+        reason = outcome,
+        enrollmentId = enrollment_id,
+        completedAt = now()
+    WHERE id = p_command_id;
+    RETURN NEXT;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,115 @@
+package com.ds;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+// Limits how fast enrollment requests are accepted, per student, per course
+// and by the backlog of the create lane, and collapses identical requests
+// that are still pending.
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class AdmissionControlService {
+    @EJB
+    private EnrollmentQueueMonitor enrollmentQueueMonitor;
+
+    private ConcurrentHashMap<UUID, TokenBucket> studentBuckets;
+    private ConcurrentHashMap<UUID, TokenBucket> courseBuckets;
+    // (studentId, courseId) of pending CREATE commands, and the reverse mapping
+    private ConcurrentHashMap<String, PendingCreate> pendingCreates;
+    private ConcurrentHashMap<UUID, String> pendingCreateKeys;
+
+    private double studentBurst;
+    private double studentRate;
+    private double courseBurst;
+    private double courseRate;
+    private long maxBacklog;
+    private long backlogRetryAfterSeconds;
+    private long pendingCreateTtlMillis;
+
+    @PostConstruct
+    public void init() {
+        studentBuckets = new ConcurrentHashMap<>();
+        courseBuckets = new ConcurrentHashMap<>();
+        pendingCreates = new ConcurrentHashMap<>();
+        pendingCreateKeys = new ConcurrentHashMap<>();
+        studentBurst = getDoubleEnv("ENROLLMENT_STUDENT_BURST", 10);
+        studentRate = getDoubleEnv("ENROLLMENT_STUDENT_RATE", 1);
+        courseBurst = getDoubleEnv("ENROLLMENT_COURSE_BURST", 200);
+        courseRate = getDoubleEnv("ENROLLMENT_COURSE_RATE", 50);
+        maxBacklog = (long) getDoubleEnv("ENROLLMENT_MAX_BACKLOG", 10000);
+        backlogRetryAfterSeconds = (long) getDoubleEnv("ENROLLMENT_BACKLOG_RETRY_AFTER_SECONDS", 5);
+        pendingCreateTtlMillis = (long) getDoubleEnv("ENROLLMENT_PENDING_DEDUP_TTL_SECONDS", 600) * 1000;
+    }
+
+    private double getDoubleEnv(String name, double defaultValue) {
+        return System.getenv(name) != null ? Double.parseDouble(System.getenv(name)) : defaultValue;
+    }
+
+    // Returns null if the request is admitted, otherwise the number of seconds
+    // the client should wait before retrying
+    public Long admitCreate(UUID studentId, UUID courseId) {
+        if (enrollmentQueueMonitor.getDepth(EnrollmentLane.CREATE) >= maxBacklog)
+            return backlogRetryAfterSeconds;
+        TokenBucket studentBucket = studentBuckets.computeIfAbsent(studentId,
+                (_) -> new TokenBucket(studentBurst, studentRate));
+        if (!studentBucket.tryAcquire())
+            return Math.max(studentBucket.getRetryAfterSeconds(), 1);
+        TokenBucket courseBucket = courseBuckets.computeIfAbsent(courseId,
+                (_) -> new TokenBucket(courseBurst, courseRate));
+        if (!courseBucket.tryAcquire())
+            return Math.max(courseBucket.getRetryAfterSeconds(), 1);
+        return null;
+    }
+
+    // Registers a CREATE command unless an identical one is still pending, in
+    // which case the pending command's id is returned
+    public UUID registerPendingCreate(UUID studentId, UUID courseId, UUID commandId) {
+        String key = studentId + ":" + courseId;
+        PendingCreate existing = pendingCreates.putIfAbsent(key,
+                new PendingCreate(commandId, System.currentTimeMillis()));
+        if (existing != null)
+            return existing.commandId;
+        pendingCreateKeys.put(commandId, key);
+        return null;
+    }
+
+    public void onCommandCompleted(UUID commandId) {
+        String key = pendingCreateKeys.remove(commandId);
+        if (key != null)
+            pendingCreates.remove(key);
+    }
+
+    @Schedule(hour = "*", minute = "*/10", persistent = false)
+    public void evictIdle() {
+        studentBuckets.values().removeIf(TokenBucket::isFull);
+        courseBuckets.values().removeIf(TokenBucket::isFull);
+        // Commands lost before completion (e.g. on a crash) must not block
+        // the student forever
+        long cutoff = System.currentTimeMillis() - pendingCreateTtlMillis;
+        pendingCreates.entrySet().removeIf((entry) -> {
+            if (entry.getValue().createdAt >= cutoff)
+                return false;
+            pendingCreateKeys.remove(entry.getValue().commandId);
+            return true;
+        });
+    }
+
+    private static class PendingCreate {
+        public final UUID commandId;
+        public final long createdAt;
+
+        public PendingCreate(UUID commandId, long createdAt) {
+            this.commandId = commandId;
+            this.createdAt = createdAt;
+        }
+    }
+}
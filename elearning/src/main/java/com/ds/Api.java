@@ -1,12 +1,27 @@
 package com.ds;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.postgresql.PGConnection;
 
 import com.ds.clientresponses.InstructorResponse;
 import com.ds.clientresponses.RequestContext;
@@ -18,12 +33,17 @@ import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
-import jakarta.inject.Inject;
-import jakarta.jms.JMSContext;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.jms.JMSDestinationDefinition;
 import jakarta.jms.JMSDestinationDefinitions;
-import jakarta.jms.Queue;
+import jakarta.jms.JMSException;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.stream.JsonParser;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
@@ -32,12 +52,17 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.core.UriInfo;
 
 @JMSDestinationDefinitions(value = {
-        @JMSDestinationDefinition(name = "java:/queue/enrollments", interfaceName = "jakarta.jms.Queue") })
+        @JMSDestinationDefinition(name = "java:/queue/enrollments", interfaceName = "jakarta.jms.Queue"),
+        @JMSDestinationDefinition(name = "java:/queue/enrollment-decisions", interfaceName = "jakarta.jms.Queue") })
 @Path("/")
 @Stateless
 @Produces(MediaType.APPLICATION_JSON)
@@ -54,20 +79,62 @@ public class Api {
     @EJB
     private MessagingFailureService messagingFailureService;
 
+    @EJB
+    private DeliveryFailureService deliveryFailureService;
+
+    @EJB
+    private EnrollmentRequestService enrollmentRequestService;
+
+    @EJB
+    private EnrollmentCommandService enrollmentCommandService;
+
+    @EJB
+    private EnrollmentQueueMonitor enrollmentQueueMonitor;
+
+    @EJB
+    private EnrollmentProducerService enrollmentProducerService;
+
+    @EJB
+    private AdmissionControlService admissionControlService;
+
+    @EJB
+    private NotificationPartitionService notificationPartitionService;
+
+    @EJB
+    private UserLookupService userLookupService;
+
+    @EJB
+    private CourseCatalog courseCatalog;
+
+    @EJB
+    private ReadCoalescingService readCoalescingService;
+
+    @Resource
+    private ManagedExecutorService executorService;
+
     @Context
     private HttpServletRequest servletRequest;
 
-    @Inject
-    private JMSContext context;
-
-    @Resource(lookup = "java:/queue/enrollments")
-    private Queue queue;
+    @Context
+    private UriInfo uriInfo;
 
     private String userServiceUrl;
 
     private static final String ADMIN_ROLE = "ADMIN";
     private static final String INSTRUCTOR_ROLE = "INSTRUCTOR";
     private static final String STUDENT_ROLE = "STUDENT";
+    private static final int MAX_ENROLLMENT_REQUEST_WAIT_SECONDS = 30;
+    private static final int MAX_BULK_ENROLLMENT_UPDATES = 5000;
+    private static final int COURSE_IMPORT_BATCH_SIZE = 500;
+    private static final String CSV_MEDIA_TYPE = "text/csv";
+    private static final int LEADERBOARD_DEFAULT_LIMIT = 10;
+    private static final int LEADERBOARD_MAX_LIMIT = 100;
+    private static final String HOT_COURSE_TABLE = "Course";
+    private static final String HOT_ENROLLMENT_TABLE = "Enrollment";
+    private static final String HOT_REVIEW_TABLE = "Review";
+    private static final String ARCHIVED_COURSE_TABLE = "archive.Course";
+    private static final String ARCHIVED_ENROLLMENT_TABLE = "archive.Enrollment";
+    private static final String ARCHIVED_REVIEW_TABLE = "archive.Review";
 
     @PostConstruct
     public void init() {
@@ -147,29 +214,35 @@ public class Api {
         return capacity <= 0 ? "Capacity must be a positive number" : null;
     }
 
+    private String getInvalidNewCourseError(CourseUpdateRequest req) {
+        if (req.name == null || req.description == null || req.startDate == null || req.endDate == null
+                || req.category == null || req.capacity == null)
+            return "Incomplete body";
+        String err = null;
+        if ((err = getInvalidCourseNameError(req.name)) != null)
+            return err;
+        if ((err = getInvalidCourseDatesError(req.startDate, req.endDate)) != null)
+            return err;
+        if ((err = getInvalidCategoryError(req.category)) != null)
+            return err;
+        if ((err = getInvalidCapacityError(req.capacity)) != null)
+            return err;
+        return null;
+    }
+
     @POST
     @Path("/course")
     public Response createCourse(CourseUpdateRequest req) throws SQLException {
         return withRole(INSTRUCTOR_ROLE, (ctx) -> {
-            if (req.name == null || req.description == null || req.startDate == null || req.endDate == null
-                    || req.category == null || req.capacity == null)
-                return Response.status(400).entity(new MessageResponse("Incomplete body")).build();
-
             {
-                String err = null;
-                if ((err = getInvalidCourseNameError(req.name)) != null)
-                    return Response.status(400).entity(new MessageResponse(err)).build();
-                if ((err = getInvalidCourseDatesError(req.startDate, req.endDate)) != null)
-                    return Response.status(400).entity(new MessageResponse(err)).build();
-                if ((err = getInvalidCategoryError(req.category)) != null)
-                    return Response.status(400).entity(new MessageResponse(err)).build();
-                if ((err = getInvalidCapacityError(req.capacity)) != null)
+                String err = getInvalidNewCourseError(req);
+                if (err != null)
                     return Response.status(400).entity(new MessageResponse(err)).build();
             }
 
             try (Connection conn = dataSource.getInstance().getConnection();
                     PreparedStatement st = conn.prepareStatement(
-                            "INSERT INTO Course (instructorId, name, description, startDate, endDate, category, capacity, status) VALUES (?, ?, ?, ?, ?, ?, ?, 'PENDING')")) {
+                            "INSERT INTO Course (instructorId, name, description, startDate, endDate, category, capacity, status) VALUES (?, ?, ?, ?, ?, ?, ?, 'PENDING') RETURNING id")) {
                 int i = 1;
                 st.setObject(i++, ctx.id);
                 st.setString(i++, req.name);
@@ -178,29 +251,250 @@ public class Api {
                 st.setLong(i++, req.endDate);
                 st.setString(i++, req.category);
                 st.setInt(i++, req.capacity);
-                st.executeUpdate();
+                ResultSet rs = st.executeQuery();
+                rs.next();
+                courseCatalog.refresh(rs.getObject("id", UUID.class));
             }
 
             return Response.ok().build();
         });
     }
 
+    // Bulk creation of pending courses from a streamed JSON array or CSV body
+    // (with a header row). Instructors import their own courses, admins must
+    // give each course's instructorId. Rows are validated like POST /course
+    // and inserted with batched statements in one transaction; invalid rows
+    // are reported by row number.
+    @POST
+    @Path("/course/import")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response importCoursesJson(InputStream body) throws SQLException {
+        return withRole(new String[] { ADMIN_ROLE, INSTRUCTOR_ROLE }, (ctx) -> {
+            try (JsonParser parser = Json.createParser(body)) {
+                if (!parser.hasNext() || parser.next() != JsonParser.Event.START_ARRAY)
+                    return Response.status(400).entity(new MessageResponse("Expected an array of courses")).build();
+                return importCourses(ctx, () -> {
+                    if (!parser.hasNext())
+                        throw new JsonException("Unexpected end of input");
+                    JsonParser.Event event = parser.next();
+                    if (event == JsonParser.Event.END_ARRAY)
+                        return null;
+                    // Non-object elements are reported as incomplete rows
+                    CourseImportRow row = new CourseImportRow();
+                    if (event == JsonParser.Event.START_ARRAY)
+                        parser.skipArray();
+                    if (event != JsonParser.Event.START_OBJECT)
+                        return row;
+                    JsonObject obj = parser.getObject();
+                    row.course.name = obj.getString("name", null);
+                    row.course.description = obj.getString("description", null);
+                    if (obj.get("startDate") instanceof JsonNumber startDate)
+                        row.course.startDate = startDate.longValue();
+                    if (obj.get("endDate") instanceof JsonNumber endDate)
+                        row.course.endDate = endDate.longValue();
+                    row.course.category = obj.getString("category", null);
+                    if (obj.get("capacity") instanceof JsonNumber capacity)
+                        row.course.capacity = capacity.intValue();
+                    row.instructorId = parseUUID(obj.getString("instructorId", null));
+                    return row;
+                });
+            } catch (JsonException | IOException e) {
+                return Response.status(400).entity(new MessageResponse("Invalid JSON: " + e.getMessage())).build();
+            }
+        });
+    }
+
+    @POST
+    @Path("/course/import")
+    @Consumes("text/csv")
+    public Response importCoursesCsv(InputStream body) throws SQLException {
+        return withRole(new String[] { ADMIN_ROLE, INSTRUCTOR_ROLE }, (ctx) -> {
+            try {
+                CsvReader reader = new CsvReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+                ArrayList<String> header = reader.readRecord();
+                if (header == null)
+                    return Response.status(400).entity(new MessageResponse("Empty body")).build();
+                return importCourses(ctx, () -> {
+                    ArrayList<String> record;
+                    do {
+                        record = reader.readRecord();
+                    } while (record != null && record.size() == 1 && record.get(0).isEmpty());
+                    if (record == null)
+                        return null;
+                    CourseImportRow row = new CourseImportRow();
+                    for (int i = 0; i < header.size() && i < record.size(); ++i) {
+                        String value = record.get(i);
+                        switch (header.get(i).trim()) {
+                            case "name" -> row.course.name = value;
+                            case "description" -> row.course.description = value;
+                            case "startDate" -> row.course.startDate = parseLong(value);
+                            case "endDate" -> row.course.endDate = parseLong(value);
+                            case "category" -> row.course.category = value;
+                            case "capacity" -> {
+                                Long capacity = parseLong(value);
+                                row.course.capacity = capacity == null ? null : capacity.intValue();
+                            }
+                            case "instructorId" -> row.instructorId = parseUUID(value);
+                            default -> {
+                            }
+                        }
+                    }
+                    return row;
+                });
+            } catch (IOException e) {
+                return Response.status(400).entity(new MessageResponse("Invalid CSV: " + e.getMessage())).build();
+            }
+        });
+    }
+
+    // Missing and malformed values are reported as an incomplete row
+    private Long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private UUID parseUUID(String value) {
+        try {
+            return value == null ? null : UUID.fromString(value.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private Response importCourses(RequestContext ctx, CourseImportRowReader rows) throws SQLException, IOException {
+        boolean isAdmin = ctx.role.equals(ADMIN_ROLE);
+        ArrayList<ImportErrorResponse> rowErrors = new ArrayList<>();
+        int importedCourses = 0;
+        try (Connection conn = dataSource.getInstance().getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement st = conn.prepareStatement(
+                    "INSERT INTO Course (instructorId, name, description, startDate, endDate, category, capacity, status) VALUES (?, ?, ?, ?, ?, ?, ?, 'PENDING')")) {
+                int rowNumber = 0;
+                int batched = 0;
+                CourseImportRow row;
+                while ((row = rows.next()) != null) {
+                    ++rowNumber;
+                    CourseUpdateRequest req = row.course;
+                    String err = getInvalidNewCourseError(req);
+                    if (err == null && isAdmin && row.instructorId == null)
+                        err = "Missing or invalid instructorId";
+                    if (err != null) {
+                        rowErrors.add(new ImportErrorResponse(rowNumber, req.name, err));
+                        continue;
+                    }
+                    int i = 1;
+                    st.setObject(i++, isAdmin ? row.instructorId : ctx.id);
+                    st.setString(i++, req.name);
+                    st.setString(i++, req.description);
+                    st.setLong(i++, req.startDate);
+                    st.setLong(i++, req.endDate);
+                    st.setString(i++, req.category);
+                    st.setInt(i++, req.capacity);
+                    st.addBatch();
+                    ++importedCourses;
+                    if (++batched == COURSE_IMPORT_BATCH_SIZE) {
+                        st.executeBatch();
+                        batched = 0;
+                    }
+                }
+                if (batched > 0)
+                    st.executeBatch();
+                conn.commit();
+            } catch (SQLException | IOException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        // A rebuild is cheaper than looking up the ids of large imports
+        if (importedCourses > 0)
+            courseCatalog.rebuild();
+        final int nImported = importedCourses;
+        return Response.ok().entity(new ImportReportResponse() {
+            {
+                imported = nImported;
+                errors = rowErrors;
+            }
+        }).build();
+    }
+
+    // Copies the accepted courses starting within [fromDate, toDate) as new
+    // pending courses with their dates shifted by shift seconds, in a single
+    // INSERT ... SELECT. Instructors clone their own courses, admins everyone's.
+    // Copies that would start in the past are skipped.
+    @POST
+    @Path("/course/clone")
+    public Response cloneCourses(CourseCloneRequest req) throws SQLException {
+        return withRole(new String[] { ADMIN_ROLE, INSTRUCTOR_ROLE }, (ctx) -> {
+            if (req.fromDate == null || req.toDate == null || req.shift == null)
+                return Response.status(400).entity(new MessageResponse("Incomplete body")).build();
+            if (req.toDate <= req.fromDate)
+                return Response.status(400)
+                        .entity(new MessageResponse("toDate must be after fromDate")).build();
+            if (req.shift <= 0)
+                return Response.status(400).entity(new MessageResponse("Shift must be a positive number")).build();
+            boolean isInstructor = ctx.role.equals(INSTRUCTOR_ROLE);
+            try (Connection conn = dataSource.getInstance().getConnection();
+                    PreparedStatement st = conn.prepareStatement("""
+                            INSERT INTO Course (instructorId, name, description, startDate, endDate, category, capacity, status)
+                            SELECT instructorId, name, description, startDate + ?, endDate + ?, category, capacity, 'PENDING'
+                            FROM Course
+                            WHERE
+                                status = 'ACCEPTED'
+                                AND startDate >= ?
+                                AND startDate < ?
+                                AND startDate + ? > ?""" + (isInstructor ? " AND instructorId = ?" : "")
+                            + " RETURNING id")) {
+                int i = 1;
+                st.setLong(i++, req.shift);
+                st.setLong(i++, req.shift);
+                st.setLong(i++, req.fromDate);
+                st.setLong(i++, req.toDate);
+                st.setLong(i++, req.shift);
+                st.setLong(i++, dateTimeService.getTimestamp() / 1000L);
+                if (isInstructor)
+                    st.setObject(i++, ctx.id);
+                ArrayList<UUID> clonedIds = new ArrayList<>();
+                ResultSet rs = st.executeQuery();
+                while (rs.next())
+                    clonedIds.add(rs.getObject("id", UUID.class));
+                courseCatalog.refresh(clonedIds);
+                int cloned = clonedIds.size();
+                return Response.ok().entity(new CourseCloneResponse() {
+                    {
+                        clonedCourses = cloned;
+                    }
+                }).build();
+            }
+        });
+    }
+
     @DELETE
     @Path("/course/{id}")
+    // Only marks the course as deleted, which hides it everywhere. Its
+    // enrollments and reviews are removed in the background by
+    // CoursePurgeService.
     public Response deleteCourse(@PathParam("id") UUID id) throws SQLException {
         return withRole(new String[] { ADMIN_ROLE, INSTRUCTOR_ROLE }, (ctx) -> {
             boolean isInstructor = ctx.role.equals(INSTRUCTOR_ROLE);
-            StringBuilder query = new StringBuilder("DELETE FROM Course WHERE id = ? ");
-            if (isInstructor)
-                query.append("AND instructorId = ?");
+            String query = String.format("""
+                    WITH Deleted AS (
+                        UPDATE Course SET status = 'DELETED'
+                        WHERE id = ? AND status <> 'DELETED' %s
+                        RETURNING id)
+                    INSERT INTO CoursePurge (courseId) SELECT id FROM Deleted""",
+                    isInstructor ? "AND instructorId = ?" : "");
             try (Connection conn = dataSource.getInstance().getConnection();
-                    PreparedStatement st = conn.prepareStatement(query.toString())) {
+                    PreparedStatement st = conn.prepareStatement(query)) {
                 st.setObject(1, id);
                 if (isInstructor)
                     st.setObject(2, ctx.id);
                 if (st.executeUpdate() == 0)
                     return Response.status(404).entity(
                             new MessageResponse("Could not find the specified course")).build();
+                courseCatalog.remove(id);
                 return Response.ok().build();
             }
         });
@@ -208,74 +502,127 @@ public class Api {
 
     @GET
     @Path("/course/{id}")
-    public Response getCourse(@PathParam("id") UUID id) throws SQLException {
+    public Response getCourse(@PathParam("id") UUID id, @QueryParam("includeArchived") Boolean includeArchived)
+            throws SQLException {
         return withRole("*", (ctx) -> {
-            String role = ctx.role;
-            UUID accountId = ctx.id;
-            String courseFilter = "";
-            if (role.equals(STUDENT_ROLE))
-                courseFilter = " AND Course.status = 'ACCEPTED'";
-            if (role.equals(INSTRUCTOR_ROLE))
-                courseFilter = " AND (Course.status = 'ACCEPTED' OR Course.instructorId = ?)";
+            boolean archived = false;
+            FullCourseResponse course = findSharedFullCourse(id, false);
+            if (course == null && includeArchived != null && includeArchived) {
+                archived = true;
+                course = findSharedFullCourse(id, true);
+            }
+            if (course == null || !isVisibleCourse(ctx, course.status, course.instructorId))
+                return Response.status(404).entity(new MessageResponse("Could not find the specified course"))
+                        .build();
+            return Response.status(200).entity(withEnrollment(ctx, course,
+                    archived ? ARCHIVED_ENROLLMENT_TABLE : HOT_ENROLLMENT_TABLE)).build();
+        });
+    }
+
+    // Students only see accepted courses, instructors also their own ones
+    private boolean isVisibleCourse(RequestContext ctx, String status, UUID instructorId) {
+        if (ctx.role.equals(STUDENT_ROLE))
+            return status.equals("ACCEPTED");
+        if (ctx.role.equals(INSTRUCTOR_ROLE))
+            return status.equals("ACCEPTED") || instructorId.equals(ctx.id);
+        return true;
+    }
+
+    // The course as seen by everyone, read once for all concurrent requests
+    // on it; visibility and the caller's enrollment are applied per request
+    private FullCourseResponse findSharedFullCourse(UUID id, boolean archived) throws SQLException {
+        return readCoalescingService.execute("GET /course/{id}", List.of(id, archived),
+                () -> archived
+                        ? findFullCourse(id, ARCHIVED_COURSE_TABLE, ARCHIVED_ENROLLMENT_TABLE, ARCHIVED_REVIEW_TABLE)
+                        : findFullCourse(id, HOT_COURSE_TABLE, HOT_ENROLLMENT_TABLE, HOT_REVIEW_TABLE));
+    }
+
+    // Copies the shared course with the enrolled flag of the caller; only
+    // students enroll
+    private FullCourseResponse withEnrollment(RequestContext ctx, FullCourseResponse course, String enrollmentTable)
+            throws SQLException {
+        boolean isEnrolled = false;
+        if (ctx.role.equals(STUDENT_ROLE)) {
             try (Connection conn = dataSource.getInstance().getConnection();
                     PreparedStatement st = conn.prepareStatement(String.format(
-                            """
-                                    SELECT
-                                        Course.id,
-                                        Course.name,
-                                        Course.category,
-                                        Course.description,
-                                        Course.capacity,
-                                        Course.instructorId,
-                                        Course.startDate,
-                                        Course.endDate,
-                                        Count(Enrollment.id) AS numberOfEnrollments,
-                                        Count(MyEnrollment.id) AS enrolled,
-                                        AVG(Review.stars) AS averageStars,
-                                        COUNT(Review.id) AS numberOfReviews,
-                                        Course.status
-                                    FROM Course
-                                        LEFT JOIN Enrollment
-                                            ON Enrollment.courseId = Course.id
-                                            AND Enrollment.status = 'ACCEPTED'
-                                        LEFT JOIN Enrollment AS MyEnrollment
-                                            ON MyEnrollment.id = Enrollment.id
-                                            AND MyEnrollment.studentId = ?
-                                        LEFT JOIN Review
-                                            ON Review.courseId = Course.id
-                                            AND Review.studentId = Enrollment.studentId
-                                    WHERE
-                                        Course.id = ?
-                                        %s
-                                    GROUP BY Course.id""",
-                            courseFilter))) {
-                st.setObject(1, accountId);
-                st.setObject(2, id);
-                if (role.equals(INSTRUCTOR_ROLE))
-                    st.setObject(3, accountId);
-                ResultSet rs = st.executeQuery();
-                if (!rs.next())
-                    return Response.status(404).entity(new MessageResponse("Could not find the specified course"))
-                            .build();
-                return Response.status(200).entity(new FullCourseResponse() {
-                    {
-                        id = rs.getObject("id", UUID.class);
-                        name = rs.getString("name");
-                        category = rs.getString("category");
-                        description = rs.getString("description");
-                        instructorId = rs.getObject("instructorId", UUID.class);
-                        startDate = rs.getLong("startDate");
-                        endDate = rs.getLong("endDate");
-                        capacity = rs.getInt("capacity");
-                        numberOfEnrollments = rs.getInt("numberOfEnrollments");
-                        numberOfReviews = rs.getInt("numberOfReviews");
-                        averageStars = rs.getFloat("averageStars");
-                        status = rs.getString("status");
-                        enrolled = rs.getInt("enrolled") != 0;
-                    }
-                }).build();
+                            "SELECT 1 FROM %s WHERE courseId = ? AND studentId = ? AND status = 'ACCEPTED'",
+                            enrollmentTable))) {
+                st.setObject(1, course.id);
+                st.setObject(2, ctx.id);
+                isEnrolled = st.executeQuery().next();
             }
-        });
+        }
+        final boolean nEnrolled = isEnrolled;
+        return new FullCourseResponse() {
+            {
+                id = course.id;
+                name = course.name;
+                category = course.category;
+                description = course.description;
+                instructorId = course.instructorId;
+                startDate = course.startDate;
+                endDate = course.endDate;
+                capacity = course.capacity;
+                numberOfEnrollments = course.numberOfEnrollments;
+                numberOfReviews = course.numberOfReviews;
+                averageStars = course.averageStars;
+                status = course.status;
+                enrolled = nEnrolled;
+            }
+        };
+    }
+
+    private FullCourseResponse findFullCourse(UUID id, String courseTable, String enrollmentTable,
+            String reviewTable) throws SQLException {
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement(String.format(
+                        """
+                                SELECT
+                                    Course.id,
+                                    Course.name,
+                                    Course.category,
+                                    Course.description,
+                                    Course.capacity,
+                                    Course.instructorId,
+                                    Course.startDate,
+                                    Course.endDate,
+                                    Count(Enrollment.id) AS numberOfEnrollments,
+                                    AVG(Review.stars) AS averageStars,
+                                    COUNT(Review.id) AS numberOfReviews,
+                                    Course.status
+                                FROM %1$s AS Course
+                                    LEFT JOIN %2$s AS Enrollment
+                                        ON Enrollment.courseId = Course.id
+                                        AND Enrollment.status = 'ACCEPTED'
+                                    LEFT JOIN %3$s AS Review
+                                        ON Review.courseId = Course.id
+                                        AND Review.studentId = Enrollment.studentId
+                                WHERE
+                                    Course.id = ?
+                                    AND Course.status <> 'DELETED'
+                                GROUP BY Course.id""",
+                        courseTable, enrollmentTable, reviewTable))) {
+            st.setObject(1, id);
+            ResultSet rs = st.executeQuery();
+            if (!rs.next())
+                return null;
+            return new FullCourseResponse() {
+                {
+                    id = rs.getObject("id", UUID.class);
+                    name = rs.getString("name");
+                    category = rs.getString("category");
+                    description = rs.getString("description");
+                    instructorId = rs.getObject("instructorId", UUID.class);
+                    startDate = rs.getLong("startDate");
+                    endDate = rs.getLong("endDate");
+                    capacity = rs.getInt("capacity");
+                    numberOfEnrollments = rs.getInt("numberOfEnrollments");
+                    numberOfReviews = rs.getInt("numberOfReviews");
+                    averageStars = rs.getFloat("averageStars");
+                    status = rs.getString("status");
+                }
+            };
+        }
     }
 
     @PUT
@@ -339,7 +686,7 @@ public class Api {
                 return Response.status(400).entity(new MessageResponse("Empty body")).build();
 
             query.append(String.join(", ", updates));
-            query.append(" WHERE id = ?");
+            query.append(" WHERE id = ? AND status <> 'DELETED'");
 
             boolean isInstructor = role.equals(INSTRUCTOR_ROLE);
             if (isInstructor)
@@ -354,55 +701,70 @@ public class Api {
                 if (st.executeUpdate() == 0)
                     return Response.status(404).entity(new MessageResponse("Could not find the specified course"))
                             .build();
+                // Seats added by a larger capacity go to the head of the waitlist
+                if (req.capacity != null) {
+                    try (PreparedStatement promote = conn.prepareStatement("SELECT promote_waitlisted(?, ?)")) {
+                        promote.setObject(1, id);
+                        promote.setLong(2, dateTimeService.getTimestamp() / 1000L);
+                        promote.executeQuery();
+                    }
+                }
+                courseCatalog.refresh(id);
                 return Response.ok().build();
             }
         });
     }
 
-    private StudentResponse getStudentResponseFromApi(UUID studentId) {
-        Response res = apiClient.getInstance().target(userServiceUrl + "/student/" + studentId)
-                .request(MediaType.APPLICATION_JSON).header("Authorization", getAuthHeader()).get();
-        return res.getStatus() == 200 ? res.readEntity(StudentResponse.class) : null;
-    }
-
     @GET
     @Path("/course/{courseId}/review")
-    public Response listReviews(@PathParam("courseId") UUID courseId) throws SQLException {
+    public Response listReviews(@PathParam("courseId") UUID courseId,
+            @QueryParam("includeArchived") Boolean includeArchived) throws SQLException {
         return withRole("*", (_) -> {
+            ArrayList<ReviewResponse> reviews = new ArrayList<>();
             try (Connection conn = dataSource.getInstance().getConnection()) {
-                try (PreparedStatement st = conn
-                        .prepareStatement("SELECT id FROM Course WHERE id = ? AND status = 'ACCEPTED'")) {
-                    st.setObject(1, courseId);
-                    ResultSet rs = st.executeQuery();
-                    if (!rs.next())
-                        return Response.status(404).entity(new MessageResponse("Could not find the specified course"))
-                                .build();
-                }
-                try (PreparedStatement st = conn
-                        .prepareStatement("SELECT id, studentId, stars, body FROM Review WHERE courseId = ?")) {
+                String reviewTable = null;
+                if (isAcceptedCourse(conn, courseId, HOT_COURSE_TABLE))
+                    reviewTable = HOT_REVIEW_TABLE;
+                else if (includeArchived != null && includeArchived
+                        && isAcceptedCourse(conn, courseId, ARCHIVED_COURSE_TABLE))
+                    reviewTable = ARCHIVED_REVIEW_TABLE;
+                if (reviewTable == null)
+                    return Response.status(404).entity(new MessageResponse("Could not find the specified course"))
+                            .build();
+                try (PreparedStatement st = conn.prepareStatement(
+                        "SELECT id, studentId, stars, body FROM " + reviewTable + " WHERE courseId = ?")) {
                     st.setObject(1, courseId);
                     ResultSet rs = st.executeQuery();
-                    ArrayList<ReviewResponse> reviews = new ArrayList<>();
                     while (rs.next()) {
-                        final UUID sId = rs.getObject("studentId", UUID.class);
-                        StudentResponse res = getStudentResponseFromApi(sId);
-                        String sName = res != null ? res.name : "Unknown";
                         reviews.add(new ReviewResponse() {
                             {
                                 id = rs.getObject("id", UUID.class);
-                                studentId = sId;
-                                studentName = sName;
+                                studentId = rs.getObject("studentId", UUID.class);
                                 stars = rs.getInt("stars");
                                 body = rs.getString("body");
                             }
                         });
                     }
-                    return Response.status(200).entity(reviews).build();
                 }
             }
+            HashMap<UUID, StudentResponse> students = userLookupService.getStudents(
+                    reviews.stream().map((review) -> review.studentId).toList());
+            for (ReviewResponse review : reviews) {
+                StudentResponse student = students.get(review.studentId);
+                review.studentName = student != null ? student.name : "Unknown";
+            }
+            return Response.status(200).entity(reviews).build();
         });
     }
 
+    private boolean isAcceptedCourse(Connection conn, UUID courseId, String courseTable) throws SQLException {
+        try (PreparedStatement st = conn
+                .prepareStatement("SELECT id FROM " + courseTable + " WHERE id = ? AND status = 'ACCEPTED'")) {
+            st.setObject(1, courseId);
+            return st.executeQuery().next();
+        }
+    }
+
     @POST
     @Path("/course/{courseId}/review")
     public Response createReview(@PathParam("courseId") UUID courseId, ReviewCreateRequest req) throws SQLException {
@@ -458,6 +820,7 @@ public class Api {
                     st.setObject(i++, req.stars);
                     st.setObject(i++, req.body);
                     st.executeUpdate();
+                    courseCatalog.refresh(courseId);
                     return Response.ok().build();
                 }
             }
@@ -471,98 +834,173 @@ public class Api {
     @GET
     @Path("/course")
     public Response listCourses(@QueryParam("sortBy") String sortBy, @QueryParam("name") String name,
-            @QueryParam("category") String category, @QueryParam("mine") Boolean mine) throws SQLException {
+            @QueryParam("category") String category, @QueryParam("mine") Boolean mine,
+            @QueryParam("includeArchived") Boolean includeArchived) throws SQLException {
         return withRole("*", (ctx) -> {
-            StringBuilder query = new StringBuilder("""
-                    SELECT
-                        Course.id AS courseId,
-                        Course.name AS courseName,
-                        Course.instructorId AS instructorId,
-                        AVG(Review.stars) AS averageStars,
-                        COUNT(Review.id) AS numberOfReviews,
-                        COUNT(Enrollment.id) AS numberOfEnrollments,
-                        Course.category,
-                        Course.startDate,
-                        Course.endDate,
-                        Course.capacity,
-                        Course.status
-                    FROM Course
-                        LEFT JOIN Enrollment ON Enrollment.courseId = Course.id AND Enrollment.status = 'ACCEPTED'
-                        LEFT JOIN Review ON Review.courseId = Course.id AND Review.studentId = Enrollment.studentId""");
-            ArrayList<String> where = new ArrayList<>();
-            LinkedList<Binding> bindings = new LinkedList<>();
+            if (includeArchived == null || !includeArchived)
+                return Response.ok().entity(courseCatalog.list(ctx.id, ctx.role, name, category,
+                        mine != null && mine, "stars".equals(sortBy))).build();
+
+            // Identical listings share one execution. Students all see the
+            // accepted courses, admins everything, instructors depend on who
+            // they are; the filters match case-insensitively.
             String role = ctx.role;
             boolean instructorWantsTheirCourses = role.equals(INSTRUCTOR_ROLE) && mine != null && mine;
-            if (!role.equals(ADMIN_ROLE) && !instructorWantsTheirCourses) {
-                where.add("(Course.status = 'ACCEPTED' OR Course.instructorId = ?)");
-                bindings.addLast((i, st) -> st.setObject(i, ctx.id));
-            }
-            if (name != null) {
-                where.add("LOWER(Course.name) LIKE LOWER(?)");
-                bindings.addLast((i, st) -> st.setString(i, "%" + escapeLikeString(name) + "%"));
-            }
-            if (category != null) {
-                where.add("LOWER(Course.category) LIKE LOWER(?)");
-                bindings.addLast((i, st) -> st.setString(i, "%" + escapeLikeString(category) + "%"));
-            }
-            if (instructorWantsTheirCourses) {
-                where.add("Course.instructorId = ?");
-                bindings.addLast((i, st) -> st.setObject(i, ctx.id));
-            }
+            String visibility = role.equals(INSTRUCTOR_ROLE)
+                    ? (instructorWantsTheirCourses ? "MINE:" : "INSTRUCTOR:") + ctx.id
+                    : role;
+            String nameFilter = name != null ? name.toLowerCase(Locale.ROOT) : null;
+            String categoryFilter = category != null ? category.toLowerCase(Locale.ROOT) : null;
+            boolean byStars = sortBy != null && sortBy.equals("stars");
+            ArrayList<CourseResponse> courses = readCoalescingService.execute("GET /course",
+                    Arrays.asList(visibility, nameFilter, categoryFilter, byStars, includeArchived),
+                    () -> listCoursesFromDatabase(ctx, nameFilter, categoryFilter, instructorWantsTheirCourses,
+                            byStars));
+            return Response.ok().entity(courses).build();
+        });
+    }
+
+    // Best rated accepted courses, from the rankings kept by the catalog
+    @GET
+    @Path("/course/top")
+    public Response listTopRatedCourses(@QueryParam("limit") Integer limit) throws SQLException {
+        return withRole("*", (_) -> {
+            String err = getInvalidLeaderboardLimitError(limit);
+            if (err != null)
+                return Response.status(400).entity(new MessageResponse(err)).build();
+            return Response.ok().entity(courseCatalog.getTopRated(limit != null ? limit : LEADERBOARD_DEFAULT_LIMIT))
+                    .build();
+        });
+    }
 
-            if (!where.isEmpty())
-                query.append(" WHERE " + String.join(" AND ", where));
+    // Accepted courses by their time-decayed rate of accepted enrollments
+    @GET
+    @Path("/course/trending")
+    public Response listTrendingCourses(@QueryParam("limit") Integer limit) throws SQLException {
+        return withRole("*", (_) -> {
+            String err = getInvalidLeaderboardLimitError(limit);
+            if (err != null)
+                return Response.status(400).entity(new MessageResponse(err)).build();
+            return Response.ok().entity(courseCatalog.getTrending(limit != null ? limit : LEADERBOARD_DEFAULT_LIMIT))
+                    .build();
+        });
+    }
 
-            query.append(" GROUP BY Course.id");
+    private String getInvalidLeaderboardLimitError(Integer limit) {
+        if (limit != null && (limit <= 0 || limit > LEADERBOARD_MAX_LIMIT))
+            return "limit must be between 1 and " + LEADERBOARD_MAX_LIMIT;
+        return null;
+    }
 
-            if (sortBy != null && sortBy.equals("stars"))
-                query.append(" ORDER BY averageStars DESC NULLS LAST");
-            else
-                query.append(" ORDER BY Course.name DESC");
+    // Listing including the archived courses, which the catalog does not hold
+    private ArrayList<CourseResponse> listCoursesFromDatabase(RequestContext ctx, String name, String category,
+            boolean instructorWantsTheirCourses, boolean byStars) throws SQLException {
+        // Tables are filled in for the hot or the archived courses
+        StringBuilder query = new StringBuilder("""
+                SELECT
+                    Course.id AS courseId,
+                    Course.name AS courseName,
+                    Course.instructorId AS instructorId,
+                    AVG(Review.stars) AS averageStars,
+                    COUNT(Review.id) AS numberOfReviews,
+                    COUNT(Enrollment.id) AS numberOfEnrollments,
+                    Course.category,
+                    Course.startDate,
+                    Course.endDate,
+                    Course.capacity,
+                    Course.status
+                FROM %1$s AS Course
+                    LEFT JOIN %2$s AS Enrollment
+                        ON Enrollment.courseId = Course.id AND Enrollment.status = 'ACCEPTED'
+                    LEFT JOIN %3$s AS Review
+                        ON Review.courseId = Course.id AND Review.studentId = Enrollment.studentId""");
+        ArrayList<String> where = new ArrayList<>();
+        where.add("Course.status <> 'DELETED'");
+        LinkedList<Binding> bindings = new LinkedList<>();
+        String role = ctx.role;
+        if (role.equals(STUDENT_ROLE))
+            where.add("Course.status = 'ACCEPTED'");
+        else if (role.equals(INSTRUCTOR_ROLE) && !instructorWantsTheirCourses) {
+            where.add("(Course.status = 'ACCEPTED' OR Course.instructorId = ?)");
+            bindings.addLast((i, st) -> st.setObject(i, ctx.id));
+        }
+        if (name != null) {
+            where.add("LOWER(Course.name) LIKE LOWER(?)");
+            bindings.addLast((i, st) -> st.setString(i, "%" + escapeLikeString(name) + "%"));
+        }
+        if (category != null) {
+            where.add("LOWER(Course.category) LIKE LOWER(?)");
+            bindings.addLast((i, st) -> st.setString(i, "%" + escapeLikeString(category) + "%"));
+        }
+        if (instructorWantsTheirCourses) {
+            where.add("Course.instructorId = ?");
+            bindings.addLast((i, st) -> st.setObject(i, ctx.id));
+        }
 
-            try (Connection conn = dataSource.getInstance().getConnection();
-                    PreparedStatement st = conn.prepareStatement(query.toString())) {
-                applyBindings(st, bindings);
-                ResultSet rs = st.executeQuery();
-                ArrayList<CourseResponse> courses = new ArrayList<>();
-                while (rs.next()) {
-                    final UUID instId = rs.getObject("instructorId", UUID.class);
-                    Response res = apiClient.getInstance().target(userServiceUrl + "/instructor/" + instId)
-                            .request(MediaType.APPLICATION_JSON).header("Authorization", getAuthHeader()).get();
-                    String iName = res.getStatus() == 200 ? res.readEntity(InstructorResponse.class).name
-                            : "Unknown";
+        query.append(" WHERE " + String.join(" AND ", where));
 
-                    courses.add(new CourseResponse() {
-                        {
-                            id = rs.getObject("courseId", UUID.class);
-                            name = rs.getString("courseName");
-                            instructorId = instId;
-                            instructorName = iName;
-                            averageStars = rs.getFloat("averageStars");
-                            averageStars = averageStars == null ? 0 : averageStars;
-                            numberOfReviews = rs.getInt("numberOfReviews");
-                            numberOfEnrollments = rs.getInt("numberOfEnrollments");
-                            category = rs.getString("category");
-                            startDate = rs.getLong("startDate");
-                            endDate = rs.getLong("endDate");
-                            capacity = rs.getInt("capacity");
-                            status = rs.getString("status");
-                        }
-                    });
-                }
-                return Response.ok().entity(courses).build();
+        query.append(" GROUP BY Course.id");
+
+        String fullQuery = "SELECT * FROM ("
+                + String.format(query.toString(), HOT_COURSE_TABLE, HOT_ENROLLMENT_TABLE, HOT_REVIEW_TABLE)
+                + " UNION ALL " + String.format(query.toString(), ARCHIVED_COURSE_TABLE,
+                        ARCHIVED_ENROLLMENT_TABLE, ARCHIVED_REVIEW_TABLE)
+                + ") AS Courses";
+        // Both halves take the same parameters
+        bindings.addAll(new LinkedList<>(bindings));
+
+        if (byStars)
+            fullQuery += " ORDER BY averageStars DESC NULLS LAST";
+        else
+            fullQuery += " ORDER BY courseName DESC";
+
+        ArrayList<CourseResponse> courses = new ArrayList<>();
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement(fullQuery)) {
+            applyBindings(st, bindings);
+            ResultSet rs = st.executeQuery();
+            while (rs.next()) {
+                courses.add(new CourseResponse() {
+                    {
+                        id = rs.getObject("courseId", UUID.class);
+                        name = rs.getString("courseName");
+                        instructorId = rs.getObject("instructorId", UUID.class);
+                        averageStars = rs.getFloat("averageStars");
+                        averageStars = averageStars == null ? 0 : averageStars;
+                        numberOfReviews = rs.getInt("numberOfReviews");
+                        numberOfEnrollments = rs.getInt("numberOfEnrollments");
+                        category = rs.getString("category");
+                        startDate = rs.getLong("startDate");
+                        endDate = rs.getLong("endDate");
+                        capacity = rs.getInt("capacity");
+                        status = rs.getString("status");
+                    }
+                });
             }
-        });
+        }
+        HashMap<UUID, InstructorResponse> instructors = userLookupService.getInstructors(
+                courses.stream().map((course) -> course.instructorId).toList());
+        for (CourseResponse course : courses) {
+            InstructorResponse instructor = instructors.get(course.instructorId);
+            course.instructorName = instructor != null ? instructor.name : "Unknown";
+        }
+        return courses;
     }
 
     @GET
     @Path("/notification")
-    public Response listNotifications(@QueryParam("isRead") Boolean isRead) throws SQLException {
+    public Response listNotifications(@QueryParam("isRead") Boolean isRead, @QueryParam("all") Boolean all)
+            throws SQLException {
         return withRole("*", (ctx) -> {
             StringBuilder query = new StringBuilder(
                     "SELECT id, title, body, isRead FROM Notification WHERE userId = ?");
             if (isRead != null)
                 query.append(" AND isRead = " + (isRead ? "true" : "false"));
+            // Older read notifications are only listed when requested, unread
+            // ones always are, including those carried into the default partition
+            if (all == null || !all)
+                query.append(" AND (createdAt >= now() - make_interval(days => "
+                        + notificationPartitionService.getListWindowDays() + ") OR NOT isRead)");
             try (Connection conn = dataSource.getInstance().getConnection();
                     PreparedStatement st = conn.prepareStatement(query.toString())) {
                 st.setObject(1, ctx.id);
@@ -602,12 +1040,78 @@ public class Api {
         });
     }
 
+    private URI getEnrollmentRequestUri(UUID commandId) {
+        return uriInfo.getBaseUriBuilder().path("enrollment-request").path(commandId.toString()).build();
+    }
+
+    // Runs the command inline when the queue and the database are idle,
+    // otherwise enqueues it for EnrollmentWorker
+    private Response submitEnrollmentCommand(UUID userId, String op, String command, boolean allowInline)
+            throws SQLException {
+        return submitEnrollmentCommand(UUID.randomUUID(), userId, op, command, allowInline);
+    }
+
+    private Response submitEnrollmentCommand(UUID commandId, UUID userId, String op, String command,
+            boolean allowInline) throws SQLException {
+        enrollmentRequestService.create(commandId, userId, op);
+        if (allowInline && enrollmentQueueMonitor.shouldRunInline(EnrollmentLane.forCommand(command))) {
+            try {
+                EnrollmentResult result = enrollmentCommandService.process(commandId, command.split(":", -1));
+                return Response.ok().location(getEnrollmentRequestUri(commandId))
+                        .entity(new EnrollmentRequestResponse() {
+                            {
+                                id = commandId;
+                                operation = op;
+                                status = result.outcome.getSucceeded() ? EnrollmentRequestService.SUCCEEDED
+                                        : EnrollmentRequestService.FAILED;
+                                reason = result.outcome.name();
+                                enrollmentId = result.enrollmentId;
+                            }
+                        }).build();
+            } catch (SQLException e) {
+                System.err.println("Inline enrollment command failed, falling back to the queue:");
+                e.printStackTrace();
+            }
+        }
+        if (!enrollmentProducerService.send(commandId, command)) {
+            enrollmentRequestService.fail(commandId, "SEND_FAILED");
+            return Response.status(503).entity(new MessageResponse("Could not submit the enrollment request"))
+                    .build();
+        }
+        return getPendingEnrollmentRequestResponse(commandId, op);
+    }
+
+    private Response getPendingEnrollmentRequestResponse(UUID commandId, String op) {
+        return Response.accepted().location(getEnrollmentRequestUri(commandId))
+                .entity(new EnrollmentRequestResponse() {
+                    {
+                        id = commandId;
+                        operation = op;
+                        status = EnrollmentRequestService.PENDING;
+                    }
+                }).build();
+    }
+
     @POST
     @Path("/course/{id}/enrollment")
     public Response createEnrollment(@PathParam("id") UUID id) throws SQLException {
         return withRole(STUDENT_ROLE, (ctx) -> {
-            context.createProducer().send(queue, "CREATE:" + ctx.id + ":" + id);
-            return Response.status(202).build();
+            Long retryAfter = admissionControlService.admitCreate(ctx.id, id);
+            if (retryAfter != null)
+                return Response.status(429).header("Retry-After", retryAfter)
+                        .entity(new MessageResponse("Too many enrollment requests, try again later")).build();
+            UUID commandId = UUID.randomUUID();
+            UUID pendingCommandId = admissionControlService.registerPendingCreate(ctx.id, id, commandId);
+            if (pendingCommandId != null)
+                return getPendingEnrollmentRequestResponse(pendingCommandId, "CREATE");
+            // Failures before the command is queued or completed must not
+            // leave retries pointing at it
+            try {
+                return submitEnrollmentCommand(commandId, ctx.id, "CREATE", "CREATE:" + ctx.id + ":" + id, true);
+            } catch (SQLException | RuntimeException e) {
+                admissionControlService.onCommandCompleted(commandId);
+                throw e;
+            }
         });
     }
 
@@ -615,8 +1119,7 @@ public class Api {
     @Path("/enrollment/{id}")
     public Response deleteEnrollment(@PathParam("id") UUID id) throws SQLException {
         return withRole(STUDENT_ROLE, (ctx) -> {
-            context.createProducer().send(queue, "DELETE:" + ctx.id + ":" + id);
-            return Response.status(202).build();
+            return submitEnrollmentCommand(ctx.id, "DELETE", "DELETE:" + ctx.id + ":" + id, false);
         });
     }
 
@@ -626,77 +1129,399 @@ public class Api {
         return withRole(INSTRUCTOR_ROLE, (ctx) -> {
             if (!req.status.equals("ACCEPTED") && !req.status.equals("REJECTED"))
                 return Response.status(400).entity(new MessageResponse("Invalid status")).build();
-            context.createProducer().send(queue,
-                    "UPDATE:" + ctx.id + ":" + id + ":" + req.status);
-            return Response.status(202).build();
+            return submitEnrollmentCommand(ctx.id, "UPDATE", "UPDATE:" + ctx.id + ":" + id + ":" + req.status,
+                    true);
+        });
+    }
+
+    @PUT
+    @Path("/course/{id}/enrollment")
+    public Response bulkUpdateEnrollments(@PathParam("id") UUID id, BulkEnrollmentUpdateRequest req)
+            throws SQLException {
+        return withRole(INSTRUCTOR_ROLE, (ctx) -> {
+            if (req.accept == null)
+                req.accept = new ArrayList<>();
+            if (req.reject == null)
+                req.reject = new ArrayList<>();
+            if (req.acceptFirst == null)
+                req.acceptFirst = 0;
+            if (req.accept.isEmpty() && req.reject.isEmpty() && req.acceptFirst == 0)
+                return Response.status(400).entity(new MessageResponse("Empty body")).build();
+            if (req.acceptFirst < 0)
+                return Response.status(400).entity(new MessageResponse("acceptFirst can't be negative")).build();
+            if (req.accept.size() + req.reject.size() > MAX_BULK_ENROLLMENT_UPDATES)
+                return Response.status(400).entity(new MessageResponse(
+                        "Can't update more than " + MAX_BULK_ENROLLMENT_UPDATES + " enrollments at once")).build();
+            if (req.accept.contains(null) || req.reject.contains(null))
+                return Response.status(400).entity(new MessageResponse("Invalid enrollment id")).build();
+            HashSet<UUID> rejectIds = new HashSet<>(req.reject);
+            for (UUID enrollmentId : req.accept)
+                if (rejectIds.contains(enrollmentId))
+                    return Response.status(400)
+                            .entity(new MessageResponse("Can't both accept and reject an enrollment")).build();
+            ArrayList<String> accept = new ArrayList<>();
+            ArrayList<String> reject = new ArrayList<>();
+            req.accept.forEach((enrollmentId) -> accept.add(enrollmentId.toString()));
+            req.reject.forEach((enrollmentId) -> reject.add(enrollmentId.toString()));
+            return submitEnrollmentCommand(ctx.id, "BULK_UPDATE", "BULK_UPDATE:" + ctx.id + ":" + id + ":"
+                    + req.acceptFirst + ":" + String.join(",", accept) + ":" + String.join(",", reject), true);
+        });
+    }
+
+    @POST
+    @Path("/course/{id}/announcement")
+    public Response createAnnouncement(@PathParam("id") UUID id, AnnouncementCreateRequest req)
+            throws SQLException {
+        return withRole(INSTRUCTOR_ROLE, (ctx) -> {
+            if (req.title == null || req.body == null || req.title.isBlank() || req.body.isBlank())
+                return Response.status(400).entity(new MessageResponse("Empty body")).build();
+            if (req.title.length() > 255 || req.body.length() > 1024)
+                return Response.status(400)
+                        .entity(new MessageResponse("Title or body too long (max 255 and 1024 characters)")).build();
+            // Encoded so that the fields can't break the command's ':' separated format
+            Base64.Encoder encoder = Base64.getEncoder();
+            String title = encoder.encodeToString(req.title.getBytes(StandardCharsets.UTF_8));
+            String body = encoder.encodeToString(req.body.getBytes(StandardCharsets.UTF_8));
+            return submitEnrollmentCommand(ctx.id, "ANNOUNCE",
+                    "ANNOUNCE:" + ctx.id + ":" + id + ":" + title + ":" + body, false);
         });
     }
 
+    @GET
+    @Path("/enrollment/{id}/waitlist")
+    public Response getWaitlistPosition(@PathParam("id") UUID id) throws SQLException {
+        return withRole(STUDENT_ROLE, (ctx) -> {
+            try (Connection conn = dataSource.getInstance().getConnection();
+                    PreparedStatement st = conn.prepareStatement(
+                            "SELECT courseId FROM Enrollment WHERE id = ? AND studentId = ? AND status = 'WAITLISTED'")) {
+                st.setObject(1, id);
+                st.setObject(2, ctx.id);
+                ResultSet rs = st.executeQuery();
+                if (!rs.next())
+                    return Response.status(404).entity(new MessageResponse("Waitlisted enrollment not found")).build();
+                UUID waitlistCourseId = rs.getObject("courseId", UUID.class);
+                int waitlistPosition = enrollmentCommandService.getWaitlistPosition(conn, id);
+                return Response.status(200).entity(new WaitlistPositionResponse() {
+                    {
+                        enrollmentId = id;
+                        courseId = waitlistCourseId;
+                        position = waitlistPosition;
+                    }
+                }).build();
+            }
+        });
+    }
+
+    // Long polls with `wait` are suspended rather than holding a request
+    // thread, and resumed once the request completes or the wait runs out
+    @GET
+    @Path("/enrollment-request/{id}")
+    public void getEnrollmentRequest(@PathParam("id") UUID id, @QueryParam("wait") Integer wait,
+            @Suspended AsyncResponse asyncResponse) throws SQLException {
+        Response res = withRole("*", (ctx) -> {
+            EnrollmentRequestResponse req = enrollmentRequestService.find(id, ctx.id);
+            if (req == null)
+                return Response.status(404).entity(new MessageResponse("Could not find the specified request"))
+                        .build();
+            if (!req.status.equals(EnrollmentRequestService.PENDING) || wait == null || wait <= 0)
+                return Response.ok().entity(req).build();
+            CompletableFuture<Void> completion = enrollmentRequestService.getCompletion(id);
+            // The worker may have finished before we started waiting
+            req = enrollmentRequestService.find(id, ctx.id);
+            if (!req.status.equals(EnrollmentRequestService.PENDING)) {
+                enrollmentRequestService.releaseCompletion(id, completion);
+                return Response.ok().entity(req).build();
+            }
+            // The timeout applies to a copy, the completion is shared with the
+            // other clients waiting on the same request
+            completion.copy().orTimeout(Math.min(wait, MAX_ENROLLMENT_REQUEST_WAIT_SECONDS), TimeUnit.SECONDS)
+                    .whenCompleteAsync((_, _) -> {
+                        enrollmentRequestService.releaseCompletion(id, completion);
+                        try {
+                            asyncResponse.resume(Response.ok().entity(enrollmentRequestService.find(id, ctx.id))
+                                    .build());
+                        } catch (SQLException e) {
+                            asyncResponse.resume(e);
+                        }
+                    }, executorService);
+            return null;
+        });
+        if (res != null)
+            asyncResponse.resume(res);
+    }
+
     @GET
     @Path("/course/{id}/enrollment")
-    public Response listCourseEnrollments(@PathParam("id") UUID id) throws SQLException {
+    public Response listCourseEnrollments(@PathParam("id") UUID id,
+            @QueryParam("includeArchived") Boolean includeArchived) throws SQLException {
         return withRole(INSTRUCTOR_ROLE, (ctx) -> {
+            ArrayList<InstructorEnrollmentResponse> enrollments = new ArrayList<>();
             // Make sure course belongs to instructor
             try (Connection conn = dataSource.getInstance().getConnection()) {
-                try (PreparedStatement st = conn
-                        .prepareStatement("SELECT id FROM Course where id = ? AND instructorId = ?")) {
-                    st.setObject(1, id);
-                    st.setObject(2, ctx.id);
-                    ResultSet rs = st.executeQuery();
-                    if (!rs.next())
-                        return Response.status(404)
-                                .entity(new MessageResponse("Could not find the specified course in your courses"))
-                                .build();
-                }
+                String enrollmentTable = null;
+                if (isInstructorCourse(conn, id, ctx.id, HOT_COURSE_TABLE))
+                    enrollmentTable = HOT_ENROLLMENT_TABLE;
+                else if (includeArchived != null && includeArchived
+                        && isInstructorCourse(conn, id, ctx.id, ARCHIVED_COURSE_TABLE))
+                    enrollmentTable = ARCHIVED_ENROLLMENT_TABLE;
+                if (enrollmentTable == null)
+                    return Response.status(404)
+                            .entity(new MessageResponse("Could not find the specified course in your courses"))
+                            .build();
                 try (PreparedStatement st = conn.prepareStatement(
-                        "SELECT id, studentId, status FROM Enrollment WHERE Enrollment.courseId = ?")) {
+                        "SELECT id, studentId, status FROM " + enrollmentTable + " WHERE courseId = ?")) {
                     st.setObject(1, id);
                     ResultSet rs = st.executeQuery();
-                    ArrayList<InstructorEnrollmentResponse> enrollments = new ArrayList<>();
                     while (rs.next()) {
-                        StudentResponse res = getStudentResponseFromApi(rs.getObject("studentId", UUID.class));
-                        final UUID sid = res != null ? res.id : UUID.fromString("dc4be835-3a1d-493b-92f7-888829b37aec");
-                        final String sName = res != null ? res.name : "Unknown";
                         enrollments.add(new InstructorEnrollmentResponse() {
                             {
                                 id = rs.getObject("id", UUID.class);
-                                studentId = sid;
-                                studentName = sName;
+                                studentId = rs.getObject("studentId", UUID.class);
                                 status = rs.getString("status");
                             }
                         });
                     }
-                    return Response.status(200).entity(enrollments).build();
                 }
             }
+            HashMap<UUID, StudentResponse> students = userLookupService.getStudents(
+                    enrollments.stream().map((enrollment) -> enrollment.studentId).toList());
+            for (InstructorEnrollmentResponse enrollment : enrollments) {
+                StudentResponse student = students.get(enrollment.studentId);
+                enrollment.studentId = student != null ? student.id
+                        : UUID.fromString("dc4be835-3a1d-493b-92f7-888829b37aec");
+                enrollment.studentName = student != null ? student.name : "Unknown";
+            }
+            return Response.status(200).entity(enrollments).build();
+        });
+    }
+
+    // CSV exports are streamed with COPY ... TO STDOUT straight from the
+    // database to the response. User names are resolved beforehand, one
+    // batched user service lookup per batch of ids, without holding a
+    // connection, and are then loaded into a temporary table joined by the
+    // COPY query, so only the names of the users involved are kept in memory.
+    // COPY doesn't take bind parameters, so the queries may only embed UUIDs
+    // and numbers.
+    private Response exportCsv(String fileName, String userIdsQuery, boolean students, String copyQuery) {
+        StreamingOutput output = (out) -> {
+            try {
+                HashMap<UUID, String> names = resolveExportUserNames(userIdsQuery, students);
+                try (Connection conn = dataSource.getInstance().getConnection()) {
+                    conn.setAutoCommit(false);
+                    try {
+                        loadExportUserNames(conn, names);
+                        conn.unwrap(PGConnection.class).getCopyAPI()
+                                .copyOut("COPY (" + copyQuery + ") TO STDOUT (FORMAT csv, HEADER)", out);
+                        conn.commit();
+                    } catch (SQLException | IOException e) {
+                        conn.rollback();
+                        throw e;
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        };
+        return Response.ok(output).type(CSV_MEDIA_TYPE)
+                .header("Content-Disposition", "attachment; filename=\"" + fileName + "\"").build();
+    }
+
+    // Maps the users returned by userIdsQuery to their names. Users unknown
+    // to the user service are left out.
+    private HashMap<UUID, String> resolveExportUserNames(String userIdsQuery, boolean students)
+            throws SQLException {
+        ArrayList<UUID> ids = new ArrayList<>();
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement(userIdsQuery)) {
+            ResultSet rs = st.executeQuery();
+            while (rs.next())
+                ids.add(rs.getObject(1, UUID.class));
+        }
+        HashMap<UUID, String> names = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += UserLookupService.MAX_BATCH_SIZE) {
+            List<UUID> batch = ids.subList(i, Math.min(i + UserLookupService.MAX_BATCH_SIZE, ids.size()));
+            if (students)
+                userLookupService.getStudents(batch).values()
+                        .forEach((student) -> names.put(student.id, student.name));
+            else
+                userLookupService.getInstructors(batch).values()
+                        .forEach((instructor) -> names.put(instructor.id, instructor.name));
+        }
+        return names;
+    }
+
+    // Fills ExportUser (id, name), dropped when the export's transaction ends
+    private void loadExportUserNames(Connection conn, HashMap<UUID, String> names) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement(
+                "CREATE TEMP TABLE ExportUser (id UUID PRIMARY KEY, name TEXT) ON COMMIT DROP")) {
+            st.execute();
+        }
+        ArrayList<UUID> ids = new ArrayList<>(names.keySet());
+        for (int i = 0; i < ids.size(); i += UserLookupService.MAX_BATCH_SIZE) {
+            List<UUID> batch = ids.subList(i, Math.min(i + UserLookupService.MAX_BATCH_SIZE, ids.size()));
+            try (PreparedStatement st = conn.prepareStatement(
+                    "INSERT INTO ExportUser (id, name) SELECT * FROM unnest(?::UUID[], ?::TEXT[])")) {
+                st.setArray(1, conn.createArrayOf("uuid", batch.toArray()));
+                st.setArray(2, conn.createArrayOf("text", batch.stream().map(names::get).toArray()));
+                st.executeUpdate();
+            }
+        }
+    }
+
+    // Checks that the course exists and, for instructors, that it is theirs
+    private boolean isExportableCourse(RequestContext ctx, UUID courseId) throws SQLException {
+        boolean isInstructor = ctx.role.equals(INSTRUCTOR_ROLE);
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement(
+                        "SELECT id FROM Course WHERE id = ? AND status <> 'DELETED'"
+                                + (isInstructor ? " AND instructorId = ?" : ""))) {
+            st.setObject(1, courseId);
+            if (isInstructor)
+                st.setObject(2, ctx.id);
+            return st.executeQuery().next();
+        }
+    }
+
+    @GET
+    @Path("/course/{id}/enrollment/export")
+    @Produces(CSV_MEDIA_TYPE)
+    public Response exportCourseEnrollments(@PathParam("id") UUID id) throws SQLException {
+        return withRole(new String[] { ADMIN_ROLE, INSTRUCTOR_ROLE }, (ctx) -> {
+            if (!isExportableCourse(ctx, id))
+                return Response.status(404).type(MediaType.APPLICATION_JSON)
+                        .entity(new MessageResponse("Could not find the specified course")).build();
+            return exportCsv("enrollments-" + id + ".csv",
+                    String.format("SELECT DISTINCT studentId FROM Enrollment WHERE courseId = '%s'", id), true,
+                    String.format("""
+                            SELECT
+                                Enrollment.id,
+                                Enrollment.studentId,
+                                COALESCE(ExportUser.name, 'Unknown') AS studentName,
+                                Enrollment.status,
+                                EXTRACT(EPOCH FROM Enrollment.requestedAt)::BIGINT AS requestedAt
+                            FROM Enrollment
+                                LEFT JOIN ExportUser ON ExportUser.id = Enrollment.studentId
+                            WHERE Enrollment.courseId = '%s'
+                            ORDER BY Enrollment.requestedAt, Enrollment.id""", id));
+        });
+    }
+
+    @GET
+    @Path("/course/{courseId}/review/export")
+    @Produces(CSV_MEDIA_TYPE)
+    public Response exportReviews(@PathParam("courseId") UUID courseId) throws SQLException {
+        return withRole(new String[] { ADMIN_ROLE, INSTRUCTOR_ROLE }, (ctx) -> {
+            if (!isExportableCourse(ctx, courseId))
+                return Response.status(404).type(MediaType.APPLICATION_JSON)
+                        .entity(new MessageResponse("Could not find the specified course")).build();
+            return exportCsv("reviews-" + courseId + ".csv",
+                    String.format("SELECT DISTINCT studentId FROM Review WHERE courseId = '%s'", courseId), true,
+                    String.format("""
+                            SELECT
+                                Review.id,
+                                Review.studentId,
+                                COALESCE(ExportUser.name, 'Unknown') AS studentName,
+                                Review.stars,
+                                Review.body
+                            FROM Review
+                                LEFT JOIN ExportUser ON ExportUser.id = Review.studentId
+                            WHERE Review.courseId = '%s'
+                            ORDER BY Review.id""", courseId));
+        });
+    }
+
+    // The whole catalog for admins, their own courses for instructors
+    @GET
+    @Path("/course/export")
+    @Produces(CSV_MEDIA_TYPE)
+    public Response exportCourses() throws SQLException {
+        return withRole(new String[] { ADMIN_ROLE, INSTRUCTOR_ROLE }, (ctx) -> {
+            String filter = " WHERE Course.status <> 'DELETED'" + (ctx.role.equals(INSTRUCTOR_ROLE)
+                    ? String.format(" AND Course.instructorId = '%s'", ctx.id)
+                    : "");
+            return exportCsv("courses.csv", "SELECT DISTINCT instructorId FROM Course" + filter, false, """
+                    SELECT
+                        Course.id,
+                        Course.name,
+                        Course.description,
+                        Course.instructorId,
+                        COALESCE(ExportUser.name, 'Unknown') AS instructorName,
+                        Course.category,
+                        Course.startDate,
+                        Course.endDate,
+                        Course.capacity,
+                        Course.status,
+                        COALESCE(Enrollments.numberOfEnrollments, 0) AS numberOfEnrollments,
+                        COALESCE(Reviews.averageStars, 0) AS averageStars,
+                        COALESCE(Reviews.numberOfReviews, 0) AS numberOfReviews
+                    FROM Course
+                        LEFT JOIN ExportUser ON ExportUser.id = Course.instructorId
+                        LEFT JOIN (
+                            SELECT courseId, COUNT(id) AS numberOfEnrollments
+                            FROM Enrollment
+                            WHERE status = 'ACCEPTED'
+                            GROUP BY courseId
+                        ) AS Enrollments ON Enrollments.courseId = Course.id
+                        LEFT JOIN (
+                            SELECT
+                                Review.courseId,
+                                AVG(Review.stars)::REAL AS averageStars,
+                                COUNT(Review.id) AS numberOfReviews
+                            FROM Review
+                                JOIN Enrollment
+                                    ON Enrollment.courseId = Review.courseId
+                                    AND Enrollment.studentId = Review.studentId
+                                    AND Enrollment.status = 'ACCEPTED'
+                            GROUP BY Review.courseId
+                        ) AS Reviews ON Reviews.courseId = Course.id""" + filter + " ORDER BY Course.name, Course.id");
         });
     }
 
+    private boolean isInstructorCourse(Connection conn, UUID courseId, UUID instructorId, String courseTable)
+            throws SQLException {
+        try (PreparedStatement st = conn
+                .prepareStatement("SELECT id FROM " + courseTable
+                        + " WHERE id = ? AND instructorId = ? AND status <> 'DELETED'")) {
+            st.setObject(1, courseId);
+            st.setObject(2, instructorId);
+            return st.executeQuery().next();
+        }
+    }
+
     @GET
     @Path("/enrollment")
-    public Response listStudentEnrollments(@QueryParam("isPast") Boolean isPast) throws SQLException {
+    public Response listStudentEnrollments(@QueryParam("isPast") Boolean isPast,
+            @QueryParam("includeArchived") Boolean includeArchived) throws SQLException {
         return withRole(STUDENT_ROLE, (ctx) -> {
             String dateFilter = "";
             if (isPast != null) {
                 long currentDate = dateTimeService.getTimestamp() / 1000L;
                 dateFilter = isPast ? " AND Course.endDate <= " + currentDate : "AND Course.endDate > " + currentDate;
             }
+            String query = """
+                    SELECT
+                        Enrollment.id AS id,
+                        Enrollment.courseId AS courseId,
+                        Course.name as courseName,
+                        Course.startDate as courseStartDate,
+                        Course.endDate as courseEndDate,
+                        Enrollment.status as status
+                    FROM
+                        %1$s AS Enrollment
+                        LEFT JOIN %2$s AS Course ON Course.id = Enrollment.courseId
+                    WHERE
+                        Enrollment.studentId = ?
+                        AND Course.status = 'ACCEPTED'""" + dateFilter;
+            boolean withArchived = includeArchived != null && includeArchived;
             try (Connection conn = dataSource.getInstance().getConnection();
-                    PreparedStatement st = conn.prepareStatement("""
-                            SELECT
-                                Enrollment.id AS id,
-                                Enrollment.courseId AS courseId,
-                                Course.name as courseName,
-                                Course.startDate as courseStartDate,
-                                Course.endDate as courseEndDate,
-                                Enrollment.status as status
-                            FROM
-                                Enrollment
-                                LEFT JOIN Course ON Course.id = Enrollment.courseId
-                            WHERE
-                                Enrollment.studentId = ?
-                                AND Course.status = 'ACCEPTED'""" + dateFilter)) {
+                    PreparedStatement st = conn.prepareStatement(
+                            String.format(query, HOT_ENROLLMENT_TABLE, HOT_COURSE_TABLE) + (withArchived
+                                    ? " UNION ALL " + String.format(query, ARCHIVED_ENROLLMENT_TABLE,
+                                            ARCHIVED_COURSE_TABLE)
+                                    : ""))) {
                 st.setObject(1, ctx.id);
+                if (withArchived)
+                    st.setObject(2, ctx.id);
                 ResultSet rs = st.executeQuery();
                 ArrayList<StudentEnrollmentResponse> enrollments = new ArrayList<>();
                 while (rs.next()) {
@@ -716,6 +1541,7 @@ public class Api {
         });
     }
 
+    // Courses and enrollments are counted in both the hot and archived tables
     @GET
     @Path("/usage")
     public Response getPlatformUsage() throws SQLException {
@@ -728,8 +1554,10 @@ public class Api {
             try (Connection conn = dataSource.getInstance().getConnection()) {
                 Integer noAcceptedCourses = 0;
                 Integer noPendingCourses = 0;
-                try (PreparedStatement st = conn
-                        .prepareStatement("SELECT count(id) AS count, status FROM Course GROUP BY status")) {
+                String courseQuery = "SELECT id, status FROM %s";
+                try (PreparedStatement st = conn.prepareStatement("SELECT count(id) AS count, status FROM ("
+                        + String.format(courseQuery, HOT_COURSE_TABLE) + " UNION ALL "
+                        + String.format(courseQuery, ARCHIVED_COURSE_TABLE) + ") AS AllCourse GROUP BY status")) {
                     ResultSet rs = st.executeQuery();
                     while (rs.next()) {
                         Integer count = rs.getInt("count");
@@ -744,8 +1572,15 @@ public class Api {
                 Integer noAcceptedEnrollments = 0;
                 Integer noRejectedEnrollments = 0;
                 Integer noPendingEnrollments = 0;
-                try (PreparedStatement st = conn
-                        .prepareStatement("SELECT count(id) AS count, status FROM Enrollment GROUP BY status")) {
+                Integer noWaitlistedEnrollments = 0;
+                String enrollmentQuery = """
+                        SELECT Enrollment.id, Enrollment.status
+                        FROM %1$s AS Enrollment JOIN %2$s AS Course ON Course.id = Enrollment.courseId
+                        WHERE Course.status <> 'DELETED'""";
+                try (PreparedStatement st = conn.prepareStatement("SELECT count(id) AS count, status FROM ("
+                        + String.format(enrollmentQuery, HOT_ENROLLMENT_TABLE, HOT_COURSE_TABLE) + " UNION ALL "
+                        + String.format(enrollmentQuery, ARCHIVED_ENROLLMENT_TABLE, ARCHIVED_COURSE_TABLE)
+                        + ") AS AllEnrollment GROUP BY status")) {
                     ResultSet rs = st.executeQuery();
                     while (rs.next()) {
                         Integer count = rs.getInt("count");
@@ -756,7 +1591,8 @@ public class Api {
                             noRejectedEnrollments = count;
                         else if (status.equals("PENDING"))
                             noPendingEnrollments = count;
-
+                        else if (status.equals("WAITLISTED"))
+                            noWaitlistedEnrollments = count;
                     }
                 }
 
@@ -765,6 +1601,7 @@ public class Api {
                 final int nAcceptedEnrollments = noAcceptedEnrollments;
                 final int nRejectedEnrollments = noRejectedEnrollments;
                 final int nPendingEnrollments = noPendingEnrollments;
+                final int nWaitlistedEnrollments = noWaitlistedEnrollments;
                 return Response.status(200).entity(new UsageResponse() {
                     {
                         numberOfStudents = userCountResponse.numberOfStudents;
@@ -775,12 +1612,58 @@ public class Api {
                         numberOfAcceptedEnrollments = nAcceptedEnrollments;
                         numberOfRejectedEnrollments = nRejectedEnrollments;
                         numberOfPendingEnrollments = nPendingEnrollments;
+                        numberOfWaitlistedEnrollments = nWaitlistedEnrollments;
                     }
                 }).build();
             }
         });
     }
 
+    @GET
+    @Path("/metrics")
+    public Response getMetrics() throws SQLException {
+        return withRole(ADMIN_ROLE, (_) -> {
+            return Response.ok().entity(new MetricsResponse() {
+                {
+                    enrollmentQueueDepth = enrollmentQueueMonitor.getDepth();
+                    enrollmentLanes = enrollmentQueueMonitor.getLaneMetrics();
+                    enrollmentProducer = enrollmentProducerService.getMetrics();
+                    databasePool = dataSource.getMetrics();
+                    readCoalescing = readCoalescingService.getMetrics();
+                }
+            }).build();
+        });
+    }
+
+    @GET
+    @Path("/dead-letter")
+    public Response listDeadLetters() throws SQLException {
+        return withRole(ADMIN_ROLE, (_) -> {
+            try {
+                return Response.ok().entity(deliveryFailureService.listDeadLetters()).build();
+            } catch (JMSException e) {
+                e.printStackTrace();
+                return Response.status(500).build();
+            }
+        });
+    }
+
+    @POST
+    @Path("/dead-letter/{id}/replay")
+    public Response replayDeadLetter(@PathParam("id") String id) throws SQLException {
+        return withRole(ADMIN_ROLE, (_) -> {
+            try {
+                if (!deliveryFailureService.replay(id))
+                    return Response.status(404).entity(new MessageResponse("Could not find the specified message"))
+                            .build();
+                return Response.status(202).build();
+            } catch (JMSException e) {
+                e.printStackTrace();
+                return Response.status(500).build();
+            }
+        });
+    }
+
     @POST
     @Path("/date")
     public Response setDate(DateChangeRequest req) {
@@ -809,6 +1692,7 @@ class UsageResponse {
     public Integer numberOfAcceptedEnrollments;
     public Integer numberOfRejectedEnrollments;
     public Integer numberOfPendingEnrollments;
+    public Integer numberOfWaitlistedEnrollments;
 }
 
 class FullCourseResponse {
@@ -827,21 +1711,6 @@ class FullCourseResponse {
     public Boolean enrolled;
 }
 
-class CourseResponse {
-    public UUID id;
-    public String name;
-    public UUID instructorId;
-    public String instructorName;
-    public Float averageStars;
-    public Integer numberOfReviews;
-    public Integer numberOfEnrollments;
-    public String category;
-    public Long startDate;
-    public Long endDate;
-    public Integer capacity;
-    public String status;
-}
-
 class NotificationResponse {
     public UUID id;
     public String title;
@@ -865,6 +1734,14 @@ class StudentEnrollmentResponse {
     public String status;
 }
 
+class MetricsResponse {
+    public Long enrollmentQueueDepth;
+    public ArrayList<LaneMetricsResponse> enrollmentLanes;
+    public ProducerMetricsResponse enrollmentProducer;
+    public PoolMetricsResponse databasePool;
+    public ArrayList<CoalescingMetricsResponse> readCoalescing;
+}
+
 class MessageResponse {
     public String message;
 
@@ -888,3 +1765,40 @@ interface Binding {
 interface Callback {
     public Response apply(RequestContext ctx) throws SQLException;
 };
+
+class WaitlistPositionResponse {
+    public UUID enrollmentId;
+    public UUID courseId;
+    public Integer position;
+}
+
+class ImportErrorResponse {
+    public Integer row;
+    public String name;
+    public String error;
+
+    public ImportErrorResponse(Integer row, String name, String error) {
+        this.row = row;
+        this.name = name;
+        this.error = error;
+    }
+}
+
+class ImportReportResponse {
+    public Integer imported;
+    public ArrayList<ImportErrorResponse> errors;
+}
+
+class CourseCloneResponse {
+    public Integer clonedCourses;
+}
+
+class CourseImportRow {
+    public CourseUpdateRequest course = new CourseUpdateRequest();
+    public UUID instructorId;
+}
+
+interface CourseImportRowReader {
+    // Returns null after the last row
+    public CourseImportRow next() throws IOException;
+}
@@ -6,6 +6,7 @@ import javax.sql.DataSource;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.ejb.Singleton;
@@ -14,7 +15,8 @@ import jakarta.ejb.Startup;
 @Singleton
 @Startup
 public class ApiDataSource {
-    private DataSource dataSource;
+    private HikariDataSource dataSource;
+    private PoolMetricsTracker metricsTracker;
 
     @PostConstruct
     public void init() {
@@ -24,13 +26,32 @@ public class ApiDataSource {
         props.setProperty("dataSource.password", System.getenv("DB_PASSWORD"));
         props.setProperty("dataSource.databaseName", System.getenv("DB_NAME"));
         props.setProperty("dataSource.serverName", System.getenv("DB_HOST"));
+        // Sends batched inserts as multi-row INSERTs
+        props.setProperty("dataSource.reWriteBatchedInserts", "true");
 
         HikariConfig config = new HikariConfig(props);
-        HikariDataSource ds = new HikariDataSource(config);
-        dataSource = ds;
+        metricsTracker = new PoolMetricsTracker();
+        config.setMetricsTrackerFactory((_, _) -> metricsTracker);
+        dataSource = new HikariDataSource(config);
     }
 
     public DataSource getInstance() {
         return dataSource;
     }
+
+    // Fraction of the pool's connections that are currently checked out
+    public double getPoolUtilization() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool == null)
+            return 0;
+        return (double) pool.getActiveConnections() / dataSource.getMaximumPoolSize();
+    }
+
+    public PoolMetricsResponse getMetrics() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool == null)
+            return metricsTracker.getMetrics(0, 0, 0);
+        return metricsTracker.getMetrics(pool.getActiveConnections(), pool.getIdleConnections(),
+                pool.getThreadsAwaitingConnection());
+    }
 }
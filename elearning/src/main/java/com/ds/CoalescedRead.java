@@ -0,0 +1,7 @@
+package com.ds;
+
+import java.sql.SQLException;
+
+public interface CoalescedRead<T> {
+    public T apply() throws SQLException;
+}
@@ -0,0 +1,7 @@
+package com.ds;
+
+public class CoalescingMetricsResponse {
+    public String endpoint;
+    public Long executedCount;
+    public Long coalescedCount;
+}
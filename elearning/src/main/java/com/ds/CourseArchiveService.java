@@ -0,0 +1,107 @@
+package com.ds;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+// Moves courses that ended more than COURSE_ARCHIVE_AFTER_DAYS ago, together
+// with their enrollments and reviews, to the tables of the archive schema so
+// that the hot tables only hold upcoming, running and recently finished
+// courses. Archived courses are read-only and only read by the endpoints that
+// are asked to include them.
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class CourseArchiveService {
+    @EJB
+    private ApiDataSource dataSource;
+
+    @EJB
+    private DateTimeService dateTimeService;
+
+    @EJB
+    private CourseCatalog courseCatalog;
+
+    private int archiveAfterDays;
+    private int batchSize;
+
+    @PostConstruct
+    public void init() {
+        archiveAfterDays = getIntEnv("COURSE_ARCHIVE_AFTER_DAYS", 365);
+        batchSize = getIntEnv("COURSE_ARCHIVE_BATCH_SIZE", 500);
+    }
+
+    private int getIntEnv(String name, int defaultValue) {
+        return System.getenv(name) != null ? Integer.parseInt(System.getenv(name)) : defaultValue;
+    }
+
+    @Schedule(hour = "3", minute = "45", persistent = false)
+    public void archiveFinishedCourses() {
+        long cutoff = dateTimeService.getTimestamp() / 1000L - archiveAfterDays * 86400L;
+        try (Connection conn = dataSource.getInstance().getConnection()) {
+            int archived;
+            do {
+                archived = archiveBatch(conn, cutoff);
+            } while (archived == batchSize);
+        } catch (SQLException e) {
+            System.err.println("Error archiving finished courses:");
+            e.printStackTrace();
+        }
+    }
+
+    // Archives up to batchSize courses in one transaction; deleting the
+    // courses cascades to the enrollments and reviews copied before
+    private int archiveBatch(Connection conn, long cutoff) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            ArrayList<UUID> ids = new ArrayList<>();
+            try (PreparedStatement st = conn.prepareStatement(
+                    """
+                            SELECT id FROM Course
+                            WHERE endDate < ? AND status <> 'DELETED'
+                            ORDER BY endDate
+                            LIMIT ?
+                            FOR UPDATE SKIP LOCKED""")) {
+                st.setLong(1, cutoff);
+                st.setInt(2, batchSize);
+                ResultSet rs = st.executeQuery();
+                while (rs.next())
+                    ids.add(rs.getObject("id", UUID.class));
+            }
+            if (!ids.isEmpty()) {
+                Array courseIds = conn.createArrayOf("uuid", ids.toArray());
+                for (String query : new String[] {
+                        "INSERT INTO archive.Enrollment SELECT * FROM Enrollment WHERE courseId = ANY(?)",
+                        "INSERT INTO archive.Review SELECT * FROM Review WHERE courseId = ANY(?)",
+                        "INSERT INTO archive.Course SELECT * FROM Course WHERE id = ANY(?)",
+                        "DELETE FROM Course WHERE id = ANY(?)" }) {
+                    try (PreparedStatement st = conn.prepareStatement(query)) {
+                        st.setArray(1, courseIds);
+                        st.executeUpdate();
+                    }
+                }
+            }
+            conn.commit();
+            for (UUID id : ids)
+                courseCatalog.remove(id);
+            return ids.size();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+}
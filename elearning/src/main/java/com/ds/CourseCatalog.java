@@ -0,0 +1,501 @@
+package com.ds;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.ds.clientresponses.InstructorResponse;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ws.rs.ProcessingException;
+
+// In-process read model of the catalog served by GET /course, holding every
+// course that is neither deleted nor archived. Columns are parallel arrays,
+// primitive for dates, capacity and counts, with interned categories. It is
+// built at startup and updated by the code paths that write Course,
+// Enrollment and Review; the periodic rebuild also refreshes instructor names
+// and repairs anything those updates missed. Sort orders are computed lazily
+// and kept until the data they depend on changes. The catalog also feeds the
+// top rated and trending rankings, counting the accepted enrollments a
+// refresh finds as new.
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class CourseCatalog {
+    private static final String COURSE_QUERY = """
+            SELECT
+                Course.id,
+                Course.name,
+                Course.instructorId,
+                Course.category,
+                Course.startDate,
+                Course.endDate,
+                Course.capacity,
+                Course.status,
+                COUNT(Enrollment.id) AS numberOfEnrollments,
+                COUNT(Review.id) AS numberOfReviews,
+                COALESCE(SUM(Review.stars), 0) AS starSum
+            FROM Course
+                LEFT JOIN Enrollment ON Enrollment.courseId = Course.id AND Enrollment.status = 'ACCEPTED'
+                LEFT JOIN Review ON Review.courseId = Course.id AND Review.studentId = Enrollment.studentId
+            WHERE Course.status <> 'DELETED'""";
+    private static final String ADMIN_ROLE = "ADMIN";
+    private static final String INSTRUCTOR_ROLE = "INSTRUCTOR";
+
+    @EJB
+    private ApiDataSource dataSource;
+
+    @EJB
+    private UserLookupService userLookupService;
+
+    @EJB
+    private DateTimeService dateTimeService;
+
+    private ReentrantReadWriteLock lock;
+    private Columns columns;
+    private ConcurrentHashMap<UUID, String> instructorNames;
+    // Courses updated while a rebuild was loading, applied again on top of it
+    private AtomicBoolean rebuilding;
+    private Set<UUID> updatedDuringRebuild;
+    // Set when a rebuild is asked for while one is running, which may have
+    // loaded the courses before the caller's changes were committed
+    private AtomicBoolean rebuildRequested;
+    private CourseLeaderboard leaderboard;
+
+    @PostConstruct
+    public void init() {
+        lock = new ReentrantReadWriteLock();
+        columns = new Columns(16);
+        instructorNames = new ConcurrentHashMap<>();
+        rebuilding = new AtomicBoolean(false);
+        updatedDuringRebuild = ConcurrentHashMap.newKeySet();
+        rebuildRequested = new AtomicBoolean(false);
+        long trendingHalfLifeMillis = getIntEnv("TRENDING_HALF_LIFE_HOURS", 24) * 3600000L;
+        long now = dateTimeService.getTimestamp();
+        leaderboard = new CourseLeaderboard(trendingHalfLifeMillis, getIntEnv("TOP_RATED_MIN_REVIEWS", 1), now);
+        rebuild();
+        // Older enrollments weigh less than 1/16 of a new one
+        seedTrending(now, now - 4 * trendingHalfLifeMillis);
+    }
+
+    private int getIntEnv(String name, int defaultValue) {
+        return System.getenv(name) != null ? Integer.parseInt(System.getenv(name)) : defaultValue;
+    }
+
+    // Trending scores are not persisted; after a restart they are seeded from
+    // the recent accepted enrollments, using their request time as the time
+    // they were accepted. requestedAt is stamped by the database clock, so
+    // only its age is used, counted back from now on the DateTimeService
+    // clock that the live updates and the window use.
+    private void seedTrending(long now, long since) {
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement("""
+                        SELECT courseId, acceptedAt
+                        FROM (
+                            SELECT courseId, ? - (EXTRACT(EPOCH FROM now() - requestedAt) * 1000)::BIGINT AS acceptedAt
+                            FROM Enrollment
+                            WHERE status = 'ACCEPTED'
+                        ) AS Accepted
+                        WHERE acceptedAt > ?
+                        ORDER BY acceptedAt""")) {
+            st.setLong(1, now);
+            st.setLong(2, since);
+            ResultSet rs = st.executeQuery();
+            while (rs.next())
+                leaderboard.recordEnrollments(rs.getObject("courseId", UUID.class), 1, rs.getLong("acceptedAt"));
+        } catch (SQLException e) {
+            System.err.println("Error seeding the trending courses:");
+            e.printStackTrace();
+        }
+    }
+
+    @Schedule(hour = "*", minute = "*/5", persistent = false)
+    public void rebuild() {
+        rebuildRequested.set(true);
+        while (rebuildRequested.get() && rebuilding.compareAndSet(false, true))
+            rebuildOnce();
+    }
+
+    private void rebuildOnce() {
+        rebuildRequested.set(false);
+        try {
+            updatedDuringRebuild.clear();
+            Columns loaded = load(null);
+            resolveInstructorNames(Arrays.asList(loaded.instructorIds).subList(0, loaded.size), true);
+            lock.writeLock().lock();
+            try {
+                columns = loaded;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            ArrayList<CourseResponse> courses = new ArrayList<>(loaded.size);
+            for (int i = 0; i < loaded.size; ++i)
+                courses.add(loaded.toResponse(i, getInstructorName(loaded.instructorIds[i])));
+            leaderboard.replaceAll(courses);
+        } catch (SQLException e) {
+            System.err.println("Error building the course catalog:");
+            e.printStackTrace();
+        } finally {
+            rebuilding.set(false);
+        }
+        // Their enrollments were already counted by the first refresh
+        refresh(new ArrayList<>(updatedDuringRebuild), false);
+    }
+
+    public void refresh(UUID courseId) {
+        refresh(List.of(courseId));
+    }
+
+    // Reloads the given courses, dropping those that no longer exist or were
+    // deleted. Must be called after the change was committed.
+    public void refresh(Collection<UUID> courseIds) {
+        refresh(courseIds, true);
+    }
+
+    private void refresh(Collection<UUID> courseIds, boolean recordEnrollments) {
+        if (courseIds.isEmpty())
+            return;
+        if (rebuilding.get())
+            updatedDuringRebuild.addAll(courseIds);
+        try {
+            Columns loaded = load(courseIds);
+            resolveInstructorNames(Arrays.asList(loaded.instructorIds).subList(0, loaded.size), false);
+            HashSet<UUID> missing = new HashSet<>(courseIds);
+            int[] newEnrollments = new int[loaded.size];
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < loaded.size; ++i) {
+                    missing.remove(loaded.ids[i]);
+                    Integer index = columns.indexes.get(loaded.ids[i]);
+                    if (index != null)
+                        newEnrollments[i] = loaded.enrollmentCounts[i] - columns.enrollmentCounts[index];
+                    columns.put(loaded, i);
+                }
+                for (UUID courseId : missing)
+                    columns.remove(courseId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            long now = dateTimeService.getTimestamp();
+            for (int i = 0; i < loaded.size; ++i) {
+                leaderboard.update(loaded.toResponse(i, getInstructorName(loaded.instructorIds[i])));
+                if (recordEnrollments && newEnrollments[i] > 0)
+                    leaderboard.recordEnrollments(loaded.ids[i], newEnrollments[i], now);
+            }
+            for (UUID courseId : missing)
+                leaderboard.remove(courseId);
+        } catch (SQLException e) {
+            System.err.println("Error refreshing the course catalog:");
+            e.printStackTrace();
+        }
+    }
+
+    public void remove(UUID courseId) {
+        if (rebuilding.get())
+            updatedDuringRebuild.add(courseId);
+        lock.writeLock().lock();
+        try {
+            columns.remove(courseId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        leaderboard.remove(courseId);
+    }
+
+    public ArrayList<CourseResponse> getTopRated(int limit) {
+        return leaderboard.getTopRated(limit);
+    }
+
+    public ArrayList<CourseResponse> getTrending(int limit) {
+        return leaderboard.getTrending(limit);
+    }
+
+    private String getInstructorName(UUID instructorId) {
+        return instructorNames.getOrDefault(instructorId, "Unknown");
+    }
+
+    private Columns load(Collection<UUID> courseIds) throws SQLException {
+        Collator collator = Collator.getInstance(Locale.US);
+        Columns loaded = new Columns(courseIds != null ? courseIds.size() : 1024);
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement(
+                        COURSE_QUERY + (courseIds != null ? " AND Course.id = ANY(?)" : "") + " GROUP BY Course.id")) {
+            if (courseIds != null)
+                st.setArray(1, conn.createArrayOf("uuid", courseIds.toArray()));
+            ResultSet rs = st.executeQuery();
+            while (rs.next())
+                loaded.append(rs, collator);
+        }
+        return loaded;
+    }
+
+    // Called without holding a database connection. Only unknown instructors
+    // are looked up unless all names are to be refreshed.
+    private void resolveInstructorNames(List<UUID> instructorIds, boolean all) {
+        HashSet<UUID> ids = new HashSet<>();
+        for (UUID instructorId : instructorIds)
+            if (all || !instructorNames.containsKey(instructorId))
+                ids.add(instructorId);
+        if (ids.isEmpty())
+            return;
+        try {
+            HashMap<UUID, InstructorResponse> instructors = userLookupService.getInstructors(ids);
+            for (InstructorResponse instructor : instructors.values())
+                instructorNames.put(instructor.id, instructor.name);
+        } catch (ProcessingException e) {
+            // Listed as unknown until the next rebuild
+            System.err.println("Error looking up instructors for the course catalog:");
+            e.printStackTrace();
+        }
+    }
+
+    // Mirrors the SQL listing: admins see every course, instructors asking for
+    // theirs only those, everyone else the accepted ones and their own
+    public ArrayList<CourseResponse> list(UUID userId, String role, String name, String category, boolean mine,
+            boolean byStars) {
+        boolean instructorWantsTheirCourses = role.equals(INSTRUCTOR_ROLE) && mine;
+        boolean seesAll = role.equals(ADMIN_ROLE) && !instructorWantsTheirCourses;
+        String nameFilter = name != null ? name.toLowerCase(Locale.ROOT) : null;
+        String categoryFilter = category != null ? category.toLowerCase(Locale.ROOT) : null;
+        ArrayList<CourseResponse> courses = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Columns c = columns;
+            for (int i : byStars ? c.getStarsOrder() : c.getNameOrder()) {
+                boolean isOwn = c.instructorIds[i].equals(userId);
+                if (instructorWantsTheirCourses ? !isOwn : !seesAll && !c.accepted[i] && !isOwn)
+                    continue;
+                if (nameFilter != null && !c.lowerNames[i].contains(nameFilter))
+                    continue;
+                if (categoryFilter != null && !c.lowerCategories[i].contains(categoryFilter))
+                    continue;
+                courses.add(c.toResponse(i, getInstructorName(c.instructorIds[i])));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return courses;
+    }
+
+    // Only mutated under the write lock; the cached orders may be computed
+    // concurrently by readers, which is harmless since they are equal
+    private static class Columns {
+        int size;
+        UUID[] ids;
+        String[] names;
+        String[] lowerNames;
+        CollationKey[] nameKeys;
+        UUID[] instructorIds;
+        String[] categories;
+        String[] lowerCategories;
+        long[] startDates;
+        long[] endDates;
+        int[] capacities;
+        boolean[] accepted;
+        int[] enrollmentCounts;
+        int[] reviewCounts;
+        long[] starSums;
+        HashMap<UUID, Integer> indexes;
+        volatile int[] nameOrder;
+        volatile int[] starsOrder;
+
+        Columns(int capacity) {
+            capacity = Math.max(capacity, 16);
+            ids = new UUID[capacity];
+            names = new String[capacity];
+            lowerNames = new String[capacity];
+            nameKeys = new CollationKey[capacity];
+            instructorIds = new UUID[capacity];
+            categories = new String[capacity];
+            lowerCategories = new String[capacity];
+            startDates = new long[capacity];
+            endDates = new long[capacity];
+            capacities = new int[capacity];
+            accepted = new boolean[capacity];
+            enrollmentCounts = new int[capacity];
+            reviewCounts = new int[capacity];
+            starSums = new long[capacity];
+            indexes = new HashMap<>();
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= ids.length)
+                return;
+            int newCapacity = Math.max(capacity, ids.length * 2);
+            ids = Arrays.copyOf(ids, newCapacity);
+            names = Arrays.copyOf(names, newCapacity);
+            lowerNames = Arrays.copyOf(lowerNames, newCapacity);
+            nameKeys = Arrays.copyOf(nameKeys, newCapacity);
+            instructorIds = Arrays.copyOf(instructorIds, newCapacity);
+            categories = Arrays.copyOf(categories, newCapacity);
+            lowerCategories = Arrays.copyOf(lowerCategories, newCapacity);
+            startDates = Arrays.copyOf(startDates, newCapacity);
+            endDates = Arrays.copyOf(endDates, newCapacity);
+            capacities = Arrays.copyOf(capacities, newCapacity);
+            accepted = Arrays.copyOf(accepted, newCapacity);
+            enrollmentCounts = Arrays.copyOf(enrollmentCounts, newCapacity);
+            reviewCounts = Arrays.copyOf(reviewCounts, newCapacity);
+            starSums = Arrays.copyOf(starSums, newCapacity);
+        }
+
+        void append(ResultSet rs, Collator collator) throws SQLException {
+            ensureCapacity(size + 1);
+            int i = size++;
+            ids[i] = rs.getObject("id", UUID.class);
+            names[i] = rs.getString("name");
+            lowerNames[i] = names[i].toLowerCase(Locale.ROOT);
+            nameKeys[i] = collator.getCollationKey(names[i]);
+            instructorIds[i] = rs.getObject("instructorId", UUID.class);
+            categories[i] = rs.getString("category").intern();
+            lowerCategories[i] = categories[i].toLowerCase(Locale.ROOT).intern();
+            startDates[i] = rs.getLong("startDate");
+            endDates[i] = rs.getLong("endDate");
+            capacities[i] = rs.getInt("capacity");
+            accepted[i] = rs.getString("status").equals("ACCEPTED");
+            enrollmentCounts[i] = rs.getInt("numberOfEnrollments");
+            reviewCounts[i] = rs.getInt("numberOfReviews");
+            starSums[i] = rs.getLong("starSum");
+            indexes.put(ids[i], i);
+        }
+
+        // Copies row j of src over the course's row, appending it if new
+        void put(Columns src, int j) {
+            Integer index = indexes.get(src.ids[j]);
+            int i;
+            if (index == null) {
+                ensureCapacity(size + 1);
+                i = size++;
+                indexes.put(src.ids[j], i);
+                nameOrder = null;
+                starsOrder = null;
+            } else {
+                i = index;
+                if (!src.names[j].equals(names[i]))
+                    nameOrder = null;
+                if (!src.names[j].equals(names[i]) || src.reviewCounts[j] != reviewCounts[i]
+                        || src.starSums[j] != starSums[i])
+                    starsOrder = null;
+            }
+            ids[i] = src.ids[j];
+            names[i] = src.names[j];
+            lowerNames[i] = src.lowerNames[j];
+            nameKeys[i] = src.nameKeys[j];
+            instructorIds[i] = src.instructorIds[j];
+            categories[i] = src.categories[j];
+            lowerCategories[i] = src.lowerCategories[j];
+            startDates[i] = src.startDates[j];
+            endDates[i] = src.endDates[j];
+            capacities[i] = src.capacities[j];
+            accepted[i] = src.accepted[j];
+            enrollmentCounts[i] = src.enrollmentCounts[j];
+            reviewCounts[i] = src.reviewCounts[j];
+            starSums[i] = src.starSums[j];
+        }
+
+        // Moves the last row into the removed one
+        void remove(UUID id) {
+            Integer index = indexes.remove(id);
+            if (index == null)
+                return;
+            int i = index;
+            int last = --size;
+            if (i != last) {
+                ids[i] = ids[last];
+                names[i] = names[last];
+                lowerNames[i] = lowerNames[last];
+                nameKeys[i] = nameKeys[last];
+                instructorIds[i] = instructorIds[last];
+                categories[i] = categories[last];
+                lowerCategories[i] = lowerCategories[last];
+                startDates[i] = startDates[last];
+                endDates[i] = endDates[last];
+                capacities[i] = capacities[last];
+                accepted[i] = accepted[last];
+                enrollmentCounts[i] = enrollmentCounts[last];
+                reviewCounts[i] = reviewCounts[last];
+                starSums[i] = starSums[last];
+                indexes.put(ids[i], i);
+            }
+            ids[last] = null;
+            names[last] = null;
+            lowerNames[last] = null;
+            nameKeys[last] = null;
+            instructorIds[last] = null;
+            categories[last] = null;
+            lowerCategories[last] = null;
+            nameOrder = null;
+            starsOrder = null;
+        }
+
+        private Comparator<Integer> byNameDescending() {
+            return (a, b) -> nameKeys[b].compareTo(nameKeys[a]);
+        }
+
+        int[] getNameOrder() {
+            int[] order = nameOrder;
+            if (order == null)
+                nameOrder = order = sort(byNameDescending());
+            return order;
+        }
+
+        // Highest average first, courses without reviews last
+        int[] getStarsOrder() {
+            int[] order = starsOrder;
+            if (order == null)
+                starsOrder = order = sort(Comparator.<Integer, Boolean>comparing((i) -> reviewCounts[i] == 0)
+                        .thenComparing(Comparator.<Integer>comparingDouble(
+                                (i) -> reviewCounts[i] == 0 ? 0 : (double) starSums[i] / reviewCounts[i]).reversed())
+                        .thenComparing(byNameDescending()));
+            return order;
+        }
+
+        private int[] sort(Comparator<Integer> comparator) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; ++i)
+                order[i] = i;
+            Arrays.sort(order, comparator);
+            return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+        }
+
+        CourseResponse toResponse(int i, String instructor) {
+            return new CourseResponse() {
+                {
+                    id = ids[i];
+                    name = names[i];
+                    instructorId = instructorIds[i];
+                    instructorName = instructor;
+                    averageStars = reviewCounts[i] == 0 ? 0 : (float) starSums[i] / reviewCounts[i];
+                    numberOfReviews = reviewCounts[i];
+                    numberOfEnrollments = enrollmentCounts[i];
+                    category = categories[i];
+                    startDate = startDates[i];
+                    endDate = endDates[i];
+                    capacity = capacities[i];
+                    status = accepted[i] ? "ACCEPTED" : "PENDING";
+                }
+            };
+        }
+    }
+}
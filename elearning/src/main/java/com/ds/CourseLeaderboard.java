@@ -0,0 +1,210 @@
+package com.ds;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Rankings of the accepted courses behind GET /course/top and
+// GET /course/trending, kept by CourseCatalog. Both are ordered sets updated
+// in O(log n) per change, so reading the first entries never scans the
+// catalog; a bounded heap of the best courses could not take ratings going
+// down. Trending scores use forward decay: an enrollment accepted at t adds
+// exp((t - landmark) / tau), which preserves the order as time passes, and
+// the landmark is moved forward before the weights overflow.
+public class CourseLeaderboard {
+    // e^64 leaves plenty of room below Double.MAX_VALUE for the sums
+    private static final double MAX_EXPONENT = 64;
+    // Scores that decayed below this are dropped when rebasing
+    private static final double MIN_SCORE = 1e-6;
+
+    private final double tauMillis;
+    private final int minReviews;
+    private final ReentrantReadWriteLock lock;
+    private final HashMap<UUID, CourseResponse> courses;
+    private final HashMap<UUID, RatedEntry> ratedEntries;
+    private final TreeSet<RatedEntry> topRated;
+    private final HashMap<UUID, TrendingEntry> trendingEntries;
+    private final TreeSet<TrendingEntry> trending;
+    private long landmark;
+
+    public CourseLeaderboard(long halfLifeMillis, int minReviews, long now) {
+        tauMillis = halfLifeMillis / Math.log(2);
+        this.minReviews = minReviews;
+        lock = new ReentrantReadWriteLock();
+        courses = new HashMap<>();
+        ratedEntries = new HashMap<>();
+        topRated = new TreeSet<>(Comparator.comparingDouble((RatedEntry e) -> e.average).reversed()
+                .thenComparing(Comparator.comparingInt((RatedEntry e) -> e.reviews).reversed())
+                .thenComparing((e) -> e.id));
+        trendingEntries = new HashMap<>();
+        trending = new TreeSet<>(Comparator.comparingDouble((TrendingEntry e) -> e.score).reversed()
+                .thenComparing((e) -> e.id));
+        landmark = now;
+    }
+
+    // Takes the course's latest state; courses that are not accepted leave
+    // both rankings
+    public void update(CourseResponse course) {
+        lock.writeLock().lock();
+        try {
+            put(course);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(UUID courseId) {
+        lock.writeLock().lock();
+        try {
+            removeCourse(courseId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Replaces the courses after a catalog rebuild, keeping the trending
+    // scores of those still accepted
+    public void replaceAll(Collection<CourseResponse> all) {
+        lock.writeLock().lock();
+        try {
+            courses.clear();
+            ratedEntries.clear();
+            topRated.clear();
+            for (CourseResponse course : all)
+                put(course);
+            Iterator<TrendingEntry> it = trending.iterator();
+            while (it.hasNext()) {
+                TrendingEntry entry = it.next();
+                if (!courses.containsKey(entry.id)) {
+                    it.remove();
+                    trendingEntries.remove(entry.id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void recordEnrollments(UUID courseId, int count, long timestamp) {
+        lock.writeLock().lock();
+        try {
+            if (!courses.containsKey(courseId))
+                return;
+            if ((timestamp - landmark) / tauMillis > MAX_EXPONENT)
+                rebase(timestamp);
+            TrendingEntry entry = trendingEntries.get(courseId);
+            double score = count * Math.exp((timestamp - landmark) / tauMillis);
+            if (entry != null) {
+                trending.remove(entry);
+                score += entry.score;
+            }
+            entry = new TrendingEntry(courseId, score);
+            trendingEntries.put(courseId, entry);
+            trending.add(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public ArrayList<CourseResponse> getTopRated(int limit) {
+        lock.readLock().lock();
+        try {
+            ArrayList<CourseResponse> top = new ArrayList<>(Math.min(limit, topRated.size()));
+            for (RatedEntry entry : topRated) {
+                if (top.size() == limit)
+                    break;
+                top.add(courses.get(entry.id));
+            }
+            return top;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public ArrayList<CourseResponse> getTrending(int limit) {
+        lock.readLock().lock();
+        try {
+            ArrayList<CourseResponse> top = new ArrayList<>(Math.min(limit, trending.size()));
+            for (TrendingEntry entry : trending) {
+                if (top.size() == limit)
+                    break;
+                top.add(courses.get(entry.id));
+            }
+            return top;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(CourseResponse course) {
+        if (!course.status.equals("ACCEPTED")) {
+            removeCourse(course.id);
+            return;
+        }
+        courses.put(course.id, course);
+        removeRated(course.id);
+        if (course.numberOfReviews >= minReviews) {
+            RatedEntry entry = new RatedEntry(course.id, course.averageStars, course.numberOfReviews);
+            ratedEntries.put(course.id, entry);
+            topRated.add(entry);
+        }
+    }
+
+    private void removeCourse(UUID courseId) {
+        courses.remove(courseId);
+        removeRated(courseId);
+        TrendingEntry entry = trendingEntries.remove(courseId);
+        if (entry != null)
+            trending.remove(entry);
+    }
+
+    private void removeRated(UUID courseId) {
+        RatedEntry entry = ratedEntries.remove(courseId);
+        if (entry != null)
+            topRated.remove(entry);
+    }
+
+    // Moves the landmark to now, scaling the scores down accordingly
+    private void rebase(long now) {
+        double factor = Math.exp(-(now - landmark) / tauMillis);
+        landmark = now;
+        ArrayList<TrendingEntry> entries = new ArrayList<>(trending);
+        trending.clear();
+        trendingEntries.clear();
+        for (TrendingEntry entry : entries) {
+            double score = entry.score * factor;
+            if (score < MIN_SCORE)
+                continue;
+            TrendingEntry rebased = new TrendingEntry(entry.id, score);
+            trendingEntries.put(entry.id, rebased);
+            trending.add(rebased);
+        }
+    }
+
+    private static class RatedEntry {
+        final UUID id;
+        final double average;
+        final int reviews;
+
+        RatedEntry(UUID id, double average, int reviews) {
+            this.id = id;
+            this.average = average;
+            this.reviews = reviews;
+        }
+    }
+
+    private static class TrendingEntry {
+        final UUID id;
+        final double score;
+
+        TrendingEntry(UUID id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.ds;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+// Physically removes the courses marked as DELETED. Enrollments and reviews
+// are deleted in chunks of COURSE_PURGE_CHUNK_SIZE rows, each chunk in its own
+// short transaction, so that a large course never holds locks the enrollment
+// workers need for long. Students whose enrollment was still active are
+// notified with one INSERT ... SELECT per chunk.
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class CoursePurgeService {
+    @EJB
+    private ApiDataSource dataSource;
+
+    private int chunkSize;
+    private AtomicBoolean purging;
+
+    @PostConstruct
+    public void init() {
+        chunkSize = System.getenv("COURSE_PURGE_CHUNK_SIZE") != null
+                ? Integer.parseInt(System.getenv("COURSE_PURGE_CHUNK_SIZE"))
+                : 1000;
+        purging = new AtomicBoolean(false);
+    }
+
+    @Schedule(hour = "*", minute = "*", persistent = false)
+    public void purgeDeletedCourses() {
+        // A run may take longer than the schedule's period
+        if (!purging.compareAndSet(false, true))
+            return;
+        try (Connection conn = dataSource.getInstance().getConnection()) {
+            for (UUID courseId : listPendingPurges(conn))
+                purgeCourse(conn, courseId);
+        } catch (SQLException e) {
+            System.err.println("Error purging deleted courses:");
+            e.printStackTrace();
+        } finally {
+            purging.set(false);
+        }
+    }
+
+    private ArrayList<UUID> listPendingPurges(Connection conn) throws SQLException {
+        ArrayList<UUID> courseIds = new ArrayList<>();
+        try (PreparedStatement st = conn
+                .prepareStatement("SELECT courseId FROM CoursePurge ORDER BY requestedAt")) {
+            ResultSet rs = st.executeQuery();
+            while (rs.next())
+                courseIds.add(rs.getObject("courseId", UUID.class));
+        }
+        return courseIds;
+    }
+
+    private void purgeCourse(Connection conn, UUID courseId) throws SQLException {
+        String courseName;
+        try (PreparedStatement st = conn
+                .prepareStatement("SELECT name FROM Course WHERE id = ? AND status = 'DELETED'")) {
+            st.setObject(1, courseId);
+            ResultSet rs = st.executeQuery();
+            if (!rs.next())
+                return;
+            courseName = rs.getString("name");
+        }
+        try (PreparedStatement st = conn.prepareStatement("""
+                WITH
+                    Deleted AS (
+                        DELETE FROM Enrollment
+                        WHERE id IN (SELECT id FROM Enrollment WHERE courseId = ? LIMIT ?)
+                        RETURNING studentId, status),
+                    Notified AS (
+                        INSERT INTO Notification (userId, title, body, isRead)
+                        SELECT studentId, 'Course enrollment status', ?, false
+                        FROM Deleted
+                        WHERE status <> 'REJECTED')
+                SELECT COUNT(*) AS count FROM Deleted""")) {
+            st.setObject(1, courseId);
+            st.setInt(2, chunkSize);
+            st.setString(3, "The course '" + courseName + "' was deleted, your enrollment was cancelled.");
+            while (deleteChunk(st) == chunkSize)
+                ;
+        }
+        try (PreparedStatement st = conn.prepareStatement("""
+                WITH Deleted AS (
+                    DELETE FROM Review
+                    WHERE id IN (SELECT id FROM Review WHERE courseId = ? LIMIT ?)
+                    RETURNING id)
+                SELECT COUNT(*) AS count FROM Deleted""")) {
+            st.setObject(1, courseId);
+            st.setInt(2, chunkSize);
+            while (deleteChunk(st) == chunkSize)
+                ;
+        }
+        // Also removes the course's CoursePurge row
+        try (PreparedStatement st = conn
+                .prepareStatement("DELETE FROM Course WHERE id = ? AND status = 'DELETED'")) {
+            st.setObject(1, courseId);
+            st.executeUpdate();
+        }
+    }
+
+    private int deleteChunk(PreparedStatement st) throws SQLException {
+        ResultSet rs = st.executeQuery();
+        rs.next();
+        return rs.getInt("count");
+    }
+}
@@ -0,0 +1,18 @@
+package com.ds;
+
+import java.util.UUID;
+
+public class CourseResponse {
+    public UUID id;
+    public String name;
+    public UUID instructorId;
+    public String instructorName;
+    public Float averageStars;
+    public Integer numberOfReviews;
+    public Integer numberOfEnrollments;
+    public String category;
+    public Long startDate;
+    public Long endDate;
+    public Integer capacity;
+    public String status;
+}
@@ -0,0 +1,59 @@
+package com.ds;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+// Reads RFC 4180 records one at a time: comma separated fields, optionally
+// quoted, with "" escaping a quote and line breaks allowed inside quotes.
+public class CsvReader {
+    private final Reader reader;
+    private int next;
+
+    public CsvReader(Reader reader) throws IOException {
+        this.reader = reader;
+        this.next = reader.read();
+    }
+
+    private int read() throws IOException {
+        int c = next;
+        next = reader.read();
+        return c;
+    }
+
+    // Returns null at the end of the input
+    public ArrayList<String> readRecord() throws IOException {
+        if (next == -1)
+            return null;
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            int c = read();
+            if (quoted) {
+                if (c == -1)
+                    throw new IOException("Unterminated quoted field");
+                if (c == '"') {
+                    if (next == '"')
+                        field.append((char) read());
+                    else
+                        quoted = false;
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r' && next == '\n')
+                    read();
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.ds;
+
+public class DeadLetterResponse {
+    public String id;
+    public String commandId;
+    public String command;
+    public Integer attempts;
+    public String reason;
+    public Long failedAt;
+}
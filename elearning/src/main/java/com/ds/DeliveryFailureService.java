@@ -0,0 +1,194 @@
+package com.ds;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.inject.Inject;
+import jakarta.jms.Destination;
+import jakarta.jms.JMSConsumer;
+import jakarta.jms.JMSContext;
+import jakarta.jms.JMSException;
+import jakarta.jms.JMSProducer;
+import jakarta.jms.JMSRuntimeException;
+import jakarta.jms.Message;
+import jakarta.jms.Queue;
+import jakarta.jms.QueueBrowser;
+import jakarta.jms.TextMessage;
+
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class DeliveryFailureService {
+    public static final String ATTEMPTS_PROPERTY = "failedAttempts";
+    public static final String FAILURE_REASON_PROPERTY = "failureReason";
+    public static final String FAILED_AT_PROPERTY = "failedAt";
+
+    // Broker generated ids, e.g. ID:4b1a0c3e-...; anything else is rejected
+    // before it is used in a message selector.
+    private static final Pattern MESSAGE_ID_REGEX = Pattern.compile("^ID:[a-zA-Z0-9:-]+$");
+
+    @EJB
+    private EnrollmentRequestService enrollmentRequestService;
+
+    @Inject
+    private JMSContext context;
+
+    @Resource(lookup = "java:/queue/enrollments")
+    private Queue queue;
+
+    @Resource(lookup = "java:/queue/enrollment-decisions")
+    private Queue decisionQueue;
+
+    @Resource(lookup = "java:/queue/enrollments-dlq")
+    private Queue deadLetterQueue;
+
+    private int maxAttempts;
+    private long baseDelayMillis;
+    private long maxDelayMillis;
+
+    @PostConstruct
+    public void init() {
+        maxAttempts = getIntEnv("ENROLLMENT_MAX_ATTEMPTS", 5);
+        baseDelayMillis = getIntEnv("ENROLLMENT_RETRY_BASE_DELAY_MS", 1000);
+        maxDelayMillis = getIntEnv("ENROLLMENT_RETRY_MAX_DELAY_MS", 60000);
+    }
+
+    private int getIntEnv(String name, int defaultValue) {
+        return System.getenv(name) != null ? Integer.parseInt(System.getenv(name)) : defaultValue;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    // Attempt number of the current delivery, counting both explicit retries
+    // and broker redeliveries after a crash.
+    public int getAttempt(Message msg) throws JMSException {
+        int failedAttempts = msg.propertyExists(ATTEMPTS_PROPERTY) ? msg.getIntProperty(ATTEMPTS_PROPERTY) : 0;
+        return failedAttempts + getDeliveryCount(msg);
+    }
+
+    public int getDeliveryCount(Message msg) throws JMSException {
+        return msg.propertyExists("JMSXDeliveryCount") ? msg.getIntProperty("JMSXDeliveryCount") : 1;
+    }
+
+    public boolean isTransient(Throwable e) {
+        if (e instanceof SQLTransientException || e instanceof SQLRecoverableException)
+            return true;
+        if (e instanceof SQLException) {
+            String state = ((SQLException) e).getSQLState();
+            // Connection exceptions, transaction rollbacks (serialization failures, deadlocks),
+            // insufficient resources and operator intervention are worth retrying.
+            return state != null && (state.startsWith("08") || state.startsWith("40") || state.startsWith("53")
+                    || state.startsWith("57"));
+        }
+        return e instanceof JMSException || e instanceof JMSRuntimeException;
+    }
+
+    public long getBackoffDelay(int failedAttempts) {
+        long delay = baseDelayMillis << Math.min(failedAttempts - 1, 20);
+        delay = Math.min(delay, maxDelayMillis);
+        // Jitter so that messages failing together are not retried together
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private JMSProducer copyProperties(JMSProducer producer, Message msg) throws JMSException {
+        Enumeration<?> names = msg.getPropertyNames();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            if (!name.startsWith("JMS"))
+                producer.setProperty(name, msg.getObjectProperty(name));
+        }
+        return producer;
+    }
+
+    // Re-enqueues the command on its original destination after a backoff
+    // delay. Must be called within the consuming transaction.
+    public void retry(TextMessage msg, int failedAttempts, String reason) throws JMSException {
+        long delay = getBackoffDelay(failedAttempts);
+        System.err.println("Retrying message " + msg.getJMSMessageID() + " in " + delay + "ms after attempt "
+                + failedAttempts + ": " + reason);
+        Destination destination = msg.getJMSDestination() != null ? msg.getJMSDestination() : queue;
+        copyProperties(context.createProducer(), msg)
+                .setProperty(ATTEMPTS_PROPERTY, failedAttempts)
+                .setDeliveryDelay(delay)
+                .send(destination, msg.getText());
+    }
+
+    public void deadLetter(TextMessage msg, int failedAttempts, String reason) throws JMSException {
+        System.err.println("Dead-lettering message " + msg.getJMSMessageID() + " after attempt " + failedAttempts
+                + ": " + reason);
+        copyProperties(context.createProducer(), msg)
+                .setProperty(ATTEMPTS_PROPERTY, failedAttempts)
+                .setProperty(FAILURE_REASON_PROPERTY, reason)
+                .setProperty(FAILED_AT_PROPERTY, System.currentTimeMillis())
+                .send(deadLetterQueue, msg.getText());
+        String commandId = msg.getStringProperty(ProcessedCommandService.COMMAND_ID_PROPERTY);
+        if (commandId != null)
+            enrollmentRequestService.fail(UUID.fromString(commandId), "DEAD_LETTERED");
+    }
+
+    public ArrayList<DeadLetterResponse> listDeadLetters() throws JMSException {
+        ArrayList<DeadLetterResponse> deadLetters = new ArrayList<>();
+        try (QueueBrowser browser = context.createBrowser(deadLetterQueue)) {
+            Enumeration<?> messages = browser.getEnumeration();
+            while (messages.hasMoreElements()) {
+                Message msg = (Message) messages.nextElement();
+                if (!(msg instanceof TextMessage))
+                    continue;
+                TextMessage textMsg = (TextMessage) msg;
+                deadLetters.add(new DeadLetterResponse() {
+                    {
+                        id = textMsg.getJMSMessageID();
+                        commandId = textMsg.getStringProperty(ProcessedCommandService.COMMAND_ID_PROPERTY);
+                        command = textMsg.getText();
+                        attempts = textMsg.propertyExists(ATTEMPTS_PROPERTY)
+                                ? textMsg.getIntProperty(ATTEMPTS_PROPERTY)
+                                : null;
+                        reason = textMsg.getStringProperty(FAILURE_REASON_PROPERTY);
+                        failedAt = textMsg.propertyExists(FAILED_AT_PROPERTY)
+                                ? textMsg.getLongProperty(FAILED_AT_PROPERTY)
+                                : null;
+                    }
+                });
+            }
+        }
+        return deadLetters;
+    }
+
+    // Moves a dead-lettered command back to its lane's queue with a fresh
+    // attempt budget. Returns false if no such message exists.
+    public boolean replay(String messageId) throws JMSException {
+        if (!MESSAGE_ID_REGEX.matcher(messageId).matches())
+            return false;
+        try (JMSConsumer consumer = context.createConsumer(deadLetterQueue,
+                "JMSMessageID = '" + messageId + "'")) {
+            Message msg = consumer.receive(1000);
+            if (!(msg instanceof TextMessage))
+                return false;
+            JMSProducer producer = context.createProducer();
+            String commandId = msg.getStringProperty(ProcessedCommandService.COMMAND_ID_PROPERTY);
+            if (commandId != null) {
+                producer.setProperty(ProcessedCommandService.COMMAND_ID_PROPERTY, commandId);
+                enrollmentRequestService.reset(UUID.fromString(commandId));
+            }
+            String command = ((TextMessage) msg).getText();
+            producer.send(EnrollmentLane.forCommand(command) == EnrollmentLane.CREATE ? queue : decisionQueue,
+                    command);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.ds;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.UUID;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+
+// Enrollment command logic shared by EnrollmentWorker and the synchronous
+// fast path in Api. Transactions are managed on the JDBC connection, so a
+// failure here must not roll back the caller's JMS transaction.
+@Stateless
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class EnrollmentCommandService {
+    @EJB
+    private ApiDataSource dataSource;
+
+    @EJB
+    private DateTimeService dateTimeService;
+
+    @EJB
+    private ProcessedCommandService processedCommandService;
+
+    @EJB
+    private EnrollmentRequestService enrollmentRequestService;
+
+    @EJB
+    private CourseCatalog courseCatalog;
+
+    private int announcementChunkSize;
+
+    @PostConstruct
+    public void init() {
+        announcementChunkSize = System.getenv("ANNOUNCEMENT_CHUNK_SIZE") != null
+                ? Integer.parseInt(System.getenv("ANNOUNCEMENT_CHUNK_SIZE"))
+                : 5000;
+    }
+
+    private void createNotification(Connection conn, UUID userId, String body) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement(
+                "INSERT INTO Notification (userId, title, body, isRead) VALUES (?, 'Course enrollment status', ?, ?)")) {
+            st.setObject(1, userId);
+            st.setString(2, body);
+            st.setBoolean(3, false);
+            st.executeUpdate();
+        }
+    }
+
+    // 1-based position of a waitlisted enrollment, counted on the
+    // (courseId, status, requestedAt) index
+    public int getWaitlistPosition(Connection conn, UUID enrollmentId) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement("SELECT waitlist_position(?) AS position")) {
+            st.setObject(1, enrollmentId);
+            ResultSet rs = st.executeQuery();
+            rs.next();
+            return rs.getInt("position");
+        }
+    }
+
+    private void promoteWaitlisted(Connection conn, UUID courseId) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement("SELECT promote_waitlisted(?, ?)")) {
+            st.setObject(1, courseId);
+            st.setLong(2, dateTimeService.getTimestamp() / 1000L);
+            st.executeQuery();
+        }
+    }
+
+    private UUID[] parseIds(String ids) {
+        if (ids.isEmpty())
+            return new UUID[] {};
+        String[] parts = ids.split(",");
+        UUID[] parsed = new UUID[parts.length];
+        for (int i = 0; i < parts.length; ++i)
+            parsed[i] = UUID.fromString(parts[i]);
+        return parsed;
+    }
+
+    private void createNotifications(Connection conn, ArrayList<UUID> userIds, String body) throws SQLException {
+        if (userIds.isEmpty())
+            return;
+        try (PreparedStatement st = conn.prepareStatement("""
+                INSERT INTO Notification (userId, title, body, isRead)
+                SELECT userId, 'Course enrollment status', ?, false FROM unnest(?) AS userId""")) {
+            st.setString(1, body);
+            st.setArray(2, conn.createArrayOf("uuid", userIds.toArray()));
+            st.executeUpdate();
+        }
+    }
+
+    // Applies a status to up to limit pending enrollments of the course, oldest
+    // requests first, and returns the affected students
+    private ArrayList<UUID> updatePendingEnrollments(Connection conn, UUID courseId, String status, String filter,
+            UUID[] ids, int limit) throws SQLException {
+        ArrayList<UUID> studentIds = new ArrayList<>();
+        if (limit <= 0)
+            return studentIds;
+        try (PreparedStatement st = conn.prepareStatement(String.format("""
+                UPDATE Enrollment SET status = '%s'
+                WHERE id IN (
+                    SELECT id FROM Enrollment
+                    WHERE courseId = ? AND status = 'PENDING' AND %s
+                    ORDER BY requestedAt
+                    LIMIT ?)
+                RETURNING studentId""", status, filter))) {
+            st.setObject(1, courseId);
+            st.setArray(2, conn.createArrayOf("uuid", ids));
+            st.setInt(3, limit);
+            ResultSet rs = st.executeQuery();
+            while (rs.next())
+                studentIds.add(rs.getObject("studentId", UUID.class));
+        }
+        return studentIds;
+    }
+
+    private EnrollmentResult bulkUpdateEnrollments(Connection conn, UUID instructorId, UUID courseId,
+            int acceptFirst, UUID[] acceptIds, UUID[] rejectIds) throws SQLException {
+        String courseName;
+        int freeSeats;
+        boolean canAccept;
+        // Locking the course serializes capacity checks with other decisions on it
+        try (PreparedStatement st = conn.prepareStatement("""
+                SELECT name, capacity, startDate FROM Course
+                WHERE id = ? AND instructorId = ? AND status = 'ACCEPTED'
+                FOR UPDATE""")) {
+            st.setObject(1, courseId);
+            st.setObject(2, instructorId);
+            ResultSet rs = st.executeQuery();
+            if (!rs.next()) {
+                createNotification(conn, instructorId,
+                        "Could not find a course with id: " + courseId + " in your courses.");
+                return new EnrollmentResult(EnrollmentOutcome.COURSE_NOT_FOUND, null);
+            }
+            courseName = rs.getString("name");
+            freeSeats = rs.getInt("capacity");
+            canAccept = rs.getLong("startDate") > dateTimeService.getTimestamp() / 1000L;
+        }
+        try (PreparedStatement st = conn.prepareStatement(
+                "SELECT COUNT(id) AS count FROM Enrollment WHERE courseId = ? AND status = 'ACCEPTED'")) {
+            st.setObject(1, courseId);
+            ResultSet rs = st.executeQuery();
+            rs.next();
+            freeSeats -= rs.getInt("count");
+        }
+
+        ArrayList<UUID> rejected = updatePendingEnrollments(conn, courseId, "REJECTED", "id = ANY(?)", rejectIds,
+                rejectIds.length);
+        ArrayList<UUID> accepted = new ArrayList<>();
+        int explicitlyAccepted = 0;
+        if (canAccept) {
+            accepted.addAll(updatePendingEnrollments(conn, courseId, "ACCEPTED", "id = ANY(?)", acceptIds,
+                    Math.min(acceptIds.length, freeSeats)));
+            explicitlyAccepted = accepted.size();
+            accepted.addAll(updatePendingEnrollments(conn, courseId, "ACCEPTED", "NOT (id = ANY(?))", rejectIds,
+                    Math.min(acceptFirst, freeSeats - accepted.size())));
+        }
+
+        createNotifications(conn, accepted, "Your enrollment for " + courseName + " has been accepted.");
+        createNotifications(conn, rejected, "Your enrollment for " + courseName + " has been rejected.");
+        StringBuilder summary = new StringBuilder("Accepted " + accepted.size() + " and rejected " + rejected.size()
+                + " enrollments for '" + courseName + "'.");
+        if (acceptIds.length + acceptFirst > 0 && !canAccept)
+            summary.append(" Enrollments can't be accepted since the course has already started.");
+        else if (explicitlyAccepted < acceptIds.length)
+            summary.append(" Some enrollments were not accepted since they were not pending or the course is full.");
+        createNotification(conn, instructorId, summary.toString());
+        if (!rejected.isEmpty())
+            promoteWaitlisted(conn, courseId);
+        return new EnrollmentResult(EnrollmentOutcome.BULK_APPLIED, null, courseId);
+    }
+
+    // Sends an announcement to every accepted student of the instructor's course.
+    // Students are fanned out set-based, one INSERT ... SELECT per chunk of
+    // enrollments in id order, all in the command's transaction.
+    private EnrollmentResult announce(Connection conn, UUID instructorId, UUID courseId, String title, String body)
+            throws SQLException {
+        String courseName;
+        try (PreparedStatement st = conn.prepareStatement(
+                "SELECT name FROM Course WHERE id = ? AND instructorId = ? AND status = 'ACCEPTED'")) {
+            st.setObject(1, courseId);
+            st.setObject(2, instructorId);
+            ResultSet rs = st.executeQuery();
+            if (!rs.next()) {
+                createNotification(conn, instructorId,
+                        "Could not find a course with id: " + courseId + " in your courses.");
+                return new EnrollmentResult(EnrollmentOutcome.COURSE_NOT_FOUND, null);
+            }
+            courseName = rs.getString("name");
+        }
+        int recipients = 0;
+        UUID lastEnrollmentId = new UUID(0, 0);
+        try (PreparedStatement st = conn.prepareStatement("""
+                WITH
+                    Chunk AS (
+                        SELECT id, studentId FROM Enrollment
+                        WHERE courseId = ? AND status = 'ACCEPTED' AND id > ?
+                        ORDER BY id
+                        LIMIT ?),
+                    Inserted AS (
+                        INSERT INTO Notification (userId, title, body, isRead)
+                        SELECT studentId, ?, ?, false FROM Chunk)
+                SELECT COUNT(id) AS count, (array_agg(id ORDER BY id DESC))[1] AS lastId FROM Chunk""")) {
+            st.setObject(1, courseId);
+            st.setInt(3, announcementChunkSize);
+            st.setString(4, title);
+            st.setString(5, body);
+            while (true) {
+                st.setObject(2, lastEnrollmentId);
+                ResultSet rs = st.executeQuery();
+                rs.next();
+                int count = rs.getInt("count");
+                recipients += count;
+                if (count < announcementChunkSize)
+                    break;
+                lastEnrollmentId = rs.getObject("lastId", UUID.class);
+            }
+        }
+        createNotification(conn, instructorId,
+                "Your announcement was sent to " + recipients + " students of '" + courseName + "'.");
+        return new EnrollmentResult(EnrollmentOutcome.ANNOUNCED, null);
+    }
+
+    public boolean isValidCommand(String[] body) {
+        String op = body[0];
+        boolean validCreateOrDelete = (op.equals("CREATE") || op.equals("DELETE")) && body.length == 3;
+        boolean validUpdate = op.equals("UPDATE") && body.length == 4;
+        boolean validBulkUpdate = op.equals("BULK_UPDATE") && body.length == 6;
+        boolean validAnnouncement = op.equals("ANNOUNCE") && body.length == 5;
+        return validCreateOrDelete || validUpdate || validBulkUpdate || validAnnouncement;
+    }
+
+    // CREATE, UPDATE and DELETE commands are applied by the
+    // process_enrollment_command database function in a single round trip;
+    // the call is one statement, so autocommit makes it atomic.
+    private EnrollmentResult processInDatabase(UUID commandId, String[] body) throws SQLException {
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement(
+                        "SELECT outcome, enrollment_id, course_id FROM process_enrollment_command(?, ?, ?, ?, ?, ?, ?)")) {
+            ArrayList<String> succeeded = new ArrayList<>();
+            for (EnrollmentOutcome outcome : EnrollmentOutcome.values())
+                if (outcome.getSucceeded())
+                    succeeded.add(outcome.name());
+            st.setObject(1, commandId);
+            st.setString(2, body[0]);
+            st.setObject(3, UUID.fromString(body[1]));
+            st.setObject(4, UUID.fromString(body[2]));
+            st.setString(5, body.length > 3 ? body[3] : null);
+            st.setLong(6, dateTimeService.getTimestamp() / 1000L);
+            st.setArray(7, conn.createArrayOf("text", succeeded.toArray()));
+            ResultSet rs = st.executeQuery();
+            if (!rs.next())
+                return null;
+            return new EnrollmentResult(EnrollmentOutcome.valueOf(rs.getString("outcome")),
+                    rs.getObject("enrollment_id", UUID.class), rs.getObject("course_id", UUID.class));
+        }
+    }
+
+    // Commands applied in Java, within the caller's transaction
+    private EnrollmentResult handleCommand(Connection conn, String[] body) throws SQLException {
+        if (body[0].equals("BULK_UPDATE"))
+            return bulkUpdateEnrollments(conn, UUID.fromString(body[1]), UUID.fromString(body[2]),
+                    Integer.parseInt(body[3]), parseIds(body[4]), parseIds(body[5]));
+        else
+            return announce(conn, UUID.fromString(body[1]), UUID.fromString(body[2]), decode(body[3]),
+                    decode(body[4]));
+    }
+
+    private String decode(String field) {
+        return new String(Base64.getDecoder().decode(field), StandardCharsets.UTF_8);
+    }
+
+    // Applies the command, recording it in the processed command ledger and its
+    // enrollment request. Returns null if the command was already processed.
+    public EnrollmentResult process(UUID commandId, String[] body) throws SQLException {
+        EnrollmentResult result;
+        String op = body[0];
+        if (op.equals("CREATE") || op.equals("UPDATE") || op.equals("DELETE")) {
+            result = processInDatabase(commandId, body);
+            if (result == null) {
+                System.err.println("Skipping already processed command: " + commandId);
+                return null;
+            }
+            enrollmentRequestService.notifyCompleted(commandId);
+            refreshCatalog(result);
+            return result;
+        }
+        try (Connection conn = dataSource.getInstance().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (!processedCommandService.markProcessed(conn, commandId)) {
+                    System.err.println("Skipping already processed command: " + commandId);
+                    conn.rollback();
+                    return null;
+                }
+                result = handleCommand(conn, body);
+                enrollmentRequestService.complete(conn, commandId, result);
+                conn.commit();
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        enrollmentRequestService.notifyCompleted(commandId);
+        refreshCatalog(result);
+        return result;
+    }
+
+    // Only these outcomes change the number of accepted enrollments
+    private void refreshCatalog(EnrollmentResult result) {
+        if (result.courseId != null && (result.outcome == EnrollmentOutcome.ACCEPTED
+                || result.outcome == EnrollmentOutcome.CANCELLED || result.outcome == EnrollmentOutcome.BULK_APPLIED))
+            courseCatalog.refresh(result.courseId);
+    }
+}
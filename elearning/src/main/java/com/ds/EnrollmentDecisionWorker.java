@@ -0,0 +1,17 @@
+package com.ds;
+
+import jakarta.ejb.ActivationConfigProperty;
+import jakarta.ejb.MessageDriven;
+
+// Consumes instructor decisions and student cancellations
+@MessageDriven(activationConfig = {
+        @ActivationConfigProperty(propertyName = "destinationLookup", propertyValue = "queue/enrollment-decisions"),
+        @ActivationConfigProperty(propertyName = "destinationType", propertyValue = "jakarta.jms.Queue"),
+        @ActivationConfigProperty(propertyName = "acknowledgeMode", propertyValue = "Auto-acknowledge"),
+        @ActivationConfigProperty(propertyName = "maxSession", propertyValue = "${env.ENROLLMENT_DECISION_CONSUMERS:8}") })
+public class EnrollmentDecisionWorker extends EnrollmentListener {
+    @Override
+    protected EnrollmentLane getLane() {
+        return EnrollmentLane.DECISION;
+    }
+}
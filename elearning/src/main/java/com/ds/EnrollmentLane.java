@@ -0,0 +1,13 @@
+package com.ds;
+
+// Enrollment commands are split by type into separate queues so that
+// instructor decisions and cancellations are not stuck behind floods of
+// student enrollment requests.
+public enum EnrollmentLane {
+    CREATE,
+    DECISION;
+
+    public static EnrollmentLane forCommand(String command) {
+        return command.startsWith("CREATE:") ? CREATE : DECISION;
+    }
+}
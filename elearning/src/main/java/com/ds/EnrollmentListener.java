@@ -0,0 +1,95 @@
+package com.ds;
+
+import java.util.UUID;
+
+import jakarta.ejb.EJB;
+import jakarta.jms.JMSException;
+import jakarta.jms.JMSRuntimeException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageListener;
+import jakarta.jms.TextMessage;
+
+// Delivery handling shared by the message-driven beans of each enrollment lane
+public abstract class EnrollmentListener implements MessageListener {
+    @EJB
+    private MessagingFailureService messagingFailureService;
+
+    @EJB
+    private DeliveryFailureService deliveryFailureService;
+
+    @EJB
+    private EnrollmentCommandService enrollmentCommandService;
+
+    @EJB
+    private EnrollmentQueueMonitor enrollmentQueueMonitor;
+
+    protected abstract EnrollmentLane getLane();
+
+    // Commands sent before idempotency keys were introduced fall back to the
+    // broker message id, which is stable across redeliveries.
+    private UUID getCommandId(Message msg) throws JMSException {
+        String commandId = msg.getStringProperty(ProcessedCommandService.COMMAND_ID_PROPERTY);
+        if (commandId != null)
+            return UUID.fromString(commandId);
+        return UUID.nameUUIDFromBytes(msg.getJMSMessageID().getBytes());
+    }
+
+    @Override
+    public void onMessage(Message rcvMessage) {
+        messagingFailureService.failIfTesting();
+        // CREATE:studentId:courseId
+        // UPDATE:instructorId:enrollmentId:ACCEPTED|REJECTED
+        // DELETE:studentId:enrollmentId
+        // BULK_UPDATE:instructorId:courseId:acceptFirstN:acceptedIds:rejectedIds (ids comma separated)
+        // ANNOUNCE:instructorId:courseId:title:body (title and body base64 encoded)
+        if (!(rcvMessage instanceof TextMessage)) {
+            System.err.println("Received invalid message type: " + rcvMessage.getClass().toString());
+            return;
+        }
+        TextMessage msg = (TextMessage) rcvMessage;
+        int attempt = 1;
+        try {
+            attempt = deliveryFailureService.getAttempt(msg);
+            if (attempt > deliveryFailureService.getMaxAttempts()) {
+                deliveryFailureService.deadLetter(msg, attempt - 1,
+                        "Exceeded " + deliveryFailureService.getMaxAttempts() + " delivery attempts");
+                enrollmentQueueMonitor.onProcessed(getLane());
+                return;
+            }
+            // The container crashed on this message more than once in a row; back off
+            // instead of letting the broker redeliver it immediately again.
+            if (deliveryFailureService.getDeliveryCount(msg) > 2) {
+                deliveryFailureService.retry(msg, attempt - 1, "Redelivered after repeated failures");
+                return;
+            }
+            enrollmentQueueMonitor.recordWait(getLane(), System.currentTimeMillis() - msg.getJMSTimestamp());
+            String txt = msg.getText();
+            String[] body = txt.split(":", -1);
+            if (!enrollmentCommandService.isValidCommand(body)) {
+                deliveryFailureService.deadLetter(msg, attempt, "Invalid command: " + txt);
+                enrollmentQueueMonitor.onProcessed(getLane());
+                return;
+            }
+            enrollmentCommandService.process(getCommandId(msg), body);
+            enrollmentQueueMonitor.onProcessed(getLane());
+        } catch (Exception e) {
+            handleFailure(msg, attempt, e);
+        }
+    }
+
+    private void handleFailure(TextMessage msg, int attempt, Exception e) {
+        System.err.println("Error handling message:");
+        e.printStackTrace();
+        try {
+            if (deliveryFailureService.isTransient(e) && attempt < deliveryFailureService.getMaxAttempts())
+                deliveryFailureService.retry(msg, attempt, e.toString());
+            else {
+                deliveryFailureService.deadLetter(msg, attempt, e.toString());
+                enrollmentQueueMonitor.onProcessed(getLane());
+            }
+        } catch (JMSException jmsException) {
+            // Let the container roll back so that the broker redelivers the message
+            throw new JMSRuntimeException(jmsException.getMessage(), jmsException.getErrorCode(), jmsException);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.ds;
+
+public enum EnrollmentOutcome {
+    SUBMITTED(true),
+    WAITLISTED(true),
+    ACCEPTED(true),
+    REJECTED(true),
+    CANCELLED(true),
+    BULK_APPLIED(true),
+    ANNOUNCED(true),
+    ALREADY_ENROLLED(false),
+    COURSE_NOT_FOUND(false),
+    COURSE_FULL(false),
+    ENROLLMENT_NOT_FOUND(false),
+    INVALID_STATUS(false);
+
+    private final boolean succeeded;
+
+    private EnrollmentOutcome(boolean succeeded) {
+        this.succeeded = succeeded;
+    }
+
+    public boolean getSucceeded() {
+        return succeeded;
+    }
+}
@@ -0,0 +1,265 @@
+package com.ds;
+
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.jms.CompletionListener;
+import jakarta.jms.ConnectionFactory;
+import jakarta.jms.JMSContext;
+import jakarta.jms.JMSProducer;
+import jakarta.jms.JMSRuntimeException;
+import jakarta.jms.Message;
+import jakarta.jms.Queue;
+
+// Sends enrollment commands off the request thread. Commands are buffered in
+// memory and a single dispatcher thread sends them with one long-lived
+// producer: asynchronously when they arrive one at a time, and in a single
+// transacted batch when they arrive in bursts. On shutdown the buffer is
+// flushed before the services that record the outcome are destroyed.
+@Singleton
+@Startup
+@DependsOn({ "EnrollmentRequestService", "EnrollmentQueueMonitor" })
+@Lock(LockType.READ)
+public class EnrollmentProducerService {
+    private static final long DISPATCHER_STOP_TIMEOUT_MILLIS = 5000;
+
+    @Resource(lookup = "java:/jms/EnrollmentProducerFactory")
+    private ConnectionFactory connectionFactory;
+
+    @Resource(lookup = "java:/queue/enrollments")
+    private Queue queue;
+
+    @Resource(lookup = "java:/queue/enrollment-decisions")
+    private Queue decisionQueue;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    @EJB
+    private EnrollmentRequestService enrollmentRequestService;
+
+    @EJB
+    private EnrollmentQueueMonitor enrollmentQueueMonitor;
+
+    private LinkedBlockingQueue<PendingSend> pending;
+    private int maxBatchSize;
+    private volatile boolean running;
+    private Thread dispatcher;
+
+    private AtomicLong outstandingSends;
+    private AtomicLong sentCount;
+    private AtomicLong failedCount;
+    private AtomicLong batchCount;
+    private AtomicLong totalSendLatencyNanos;
+    private AtomicLong maxSendLatencyNanos;
+
+    @PostConstruct
+    public void init() {
+        pending = new LinkedBlockingQueue<>(System.getenv("ENROLLMENT_PRODUCER_BUFFER_SIZE") != null
+                ? Integer.parseInt(System.getenv("ENROLLMENT_PRODUCER_BUFFER_SIZE"))
+                : 10000);
+        maxBatchSize = System.getenv("ENROLLMENT_PRODUCER_MAX_BATCH_SIZE") != null
+                ? Integer.parseInt(System.getenv("ENROLLMENT_PRODUCER_MAX_BATCH_SIZE"))
+                : 100;
+        outstandingSends = new AtomicLong();
+        sentCount = new AtomicLong();
+        failedCount = new AtomicLong();
+        batchCount = new AtomicLong();
+        totalSendLatencyNanos = new AtomicLong();
+        maxSendLatencyNanos = new AtomicLong();
+        running = true;
+        dispatcher = threadFactory.newThread(this::dispatch);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        // The dispatcher notices within one poll timeout and finishes the
+        // batch it is sending
+        running = false;
+        try {
+            dispatcher.join(DISPATCHER_STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dispatcher.isAlive())
+            dispatcher.interrupt();
+        flushPending();
+    }
+
+    // Clients of the buffered commands were already answered with a 202, so
+    // they are sent in one transaction, or failed as SEND_FAILED so their
+    // requests don't stay pending
+    private void flushPending() {
+        ArrayList<PendingSend> remaining = new ArrayList<>();
+        pending.drainTo(remaining);
+        if (remaining.isEmpty())
+            return;
+        try (JMSContext context = connectionFactory.createContext(getEnv("JMS_USER", "admin"),
+                getEnv("JMS_PASSWORD", "admin"), JMSContext.SESSION_TRANSACTED)) {
+            JMSProducer producer = context.createProducer();
+            for (PendingSend send : remaining)
+                producer.setProperty(ProcessedCommandService.COMMAND_ID_PROPERTY, send.commandId.toString())
+                        .send(getQueue(send.lane), send.command);
+            context.commit();
+            for (PendingSend send : remaining)
+                onSent(send);
+        } catch (JMSRuntimeException e) {
+            System.err.println("Error flushing enrollment commands on shutdown:");
+            e.printStackTrace();
+            for (PendingSend send : remaining)
+                onFailed(send);
+        }
+    }
+
+    // Returns false if the buffer is full and the command was not accepted
+    public boolean send(UUID commandId, String command) {
+        EnrollmentLane lane = EnrollmentLane.forCommand(command);
+        if (!pending.offer(new PendingSend(commandId, command, lane, System.nanoTime())))
+            return false;
+        outstandingSends.incrementAndGet();
+        enrollmentQueueMonitor.onEnqueued(lane);
+        return true;
+    }
+
+    private void dispatch() {
+        ArrayList<PendingSend> batch = new ArrayList<>();
+        while (running) {
+            try (JMSContext asyncContext = connectionFactory.createContext(getEnv("JMS_USER", "admin"),
+                    getEnv("JMS_PASSWORD", "admin"), JMSContext.AUTO_ACKNOWLEDGE);
+                    JMSContext batchContext = asyncContext.createContext(JMSContext.SESSION_TRANSACTED)) {
+                JMSProducer asyncProducer = asyncContext.createProducer();
+                JMSProducer batchProducer = batchContext.createProducer();
+                while (running) {
+                    PendingSend first = pending.poll(1, TimeUnit.SECONDS);
+                    if (first == null)
+                        continue;
+                    batch.add(first);
+                    pending.drainTo(batch, maxBatchSize - 1);
+                    if (batch.size() == 1) {
+                        asyncProducer.setAsync(new SendCompletionListener(first))
+                                .setProperty(ProcessedCommandService.COMMAND_ID_PROPERTY, first.commandId.toString())
+                                .send(getQueue(first.lane), first.command);
+                    } else {
+                        try {
+                            for (PendingSend send : batch)
+                                batchProducer
+                                        .setProperty(ProcessedCommandService.COMMAND_ID_PROPERTY,
+                                                send.commandId.toString())
+                                        .send(getQueue(send.lane), send.command);
+                            batchContext.commit();
+                        } catch (JMSRuntimeException e) {
+                            batchContext.rollback();
+                            throw e;
+                        }
+                        batchCount.incrementAndGet();
+                        for (PendingSend send : batch)
+                            onSent(send);
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (JMSRuntimeException e) {
+                System.err.println("Error sending enrollment commands:");
+                e.printStackTrace();
+                for (PendingSend send : batch)
+                    onFailed(send);
+                batch.clear();
+                try {
+                    // Back off before reconnecting to the broker
+                    Thread.sleep(1000);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+        }
+    }
+
+    private Queue getQueue(EnrollmentLane lane) {
+        return lane == EnrollmentLane.CREATE ? queue : decisionQueue;
+    }
+
+    private String getEnv(String name, String defaultValue) {
+        return System.getenv(name) != null ? System.getenv(name) : defaultValue;
+    }
+
+    private void onSent(PendingSend send) {
+        long latency = System.nanoTime() - send.enqueuedAt;
+        outstandingSends.decrementAndGet();
+        sentCount.incrementAndGet();
+        totalSendLatencyNanos.addAndGet(latency);
+        maxSendLatencyNanos.accumulateAndGet(latency, Math::max);
+    }
+
+    private void onFailed(PendingSend send) {
+        outstandingSends.decrementAndGet();
+        failedCount.incrementAndGet();
+        enrollmentQueueMonitor.onProcessed(send.lane);
+        enrollmentRequestService.fail(send.commandId, "SEND_FAILED");
+    }
+
+    public ProducerMetricsResponse getMetrics() {
+        long sent = sentCount.get();
+        return new ProducerMetricsResponse() {
+            {
+                outstandingSends = EnrollmentProducerService.this.outstandingSends.get();
+                bufferedSends = (long) pending.size();
+                sentCount = sent;
+                failedCount = EnrollmentProducerService.this.failedCount.get();
+                batchCount = EnrollmentProducerService.this.batchCount.get();
+                averageSendLatencyMillis = sent == 0 ? 0 : totalSendLatencyNanos.get() / sent / 1e6;
+                maxSendLatencyMillis = maxSendLatencyNanos.get() / 1e6;
+            }
+        };
+    }
+
+    private class SendCompletionListener implements CompletionListener {
+        private final PendingSend send;
+
+        public SendCompletionListener(PendingSend send) {
+            this.send = send;
+        }
+
+        @Override
+        public void onCompletion(Message message) {
+            onSent(send);
+        }
+
+        @Override
+        public void onException(Message message, Exception e) {
+            System.err.println("Error sending enrollment command " + send.commandId + ":");
+            e.printStackTrace();
+            onFailed(send);
+        }
+    }
+
+    private static class PendingSend {
+        public final UUID commandId;
+        public final String command;
+        public final EnrollmentLane lane;
+        public final long enqueuedAt;
+
+        public PendingSend(UUID commandId, String command, EnrollmentLane lane, long enqueuedAt) {
+            this.commandId = commandId;
+            this.command = command;
+            this.lane = lane;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
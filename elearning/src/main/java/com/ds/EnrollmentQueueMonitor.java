@@ -0,0 +1,101 @@
+package com.ds;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+// Tracks, per lane, the number of enrollment commands enqueued by this
+// instance that the workers have not finished with yet and how long commands
+// wait before a worker picks them up. Also decides when commands can bypass
+// the queue.
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class EnrollmentQueueMonitor {
+    @EJB
+    private ApiDataSource dataSource;
+
+    private EnumMap<EnrollmentLane, LaneStats> lanes;
+    private boolean fastPathEnabled;
+    private long fastPathMaxQueueDepth;
+    private double fastPathMaxPoolUtilization;
+
+    @PostConstruct
+    public void init() {
+        lanes = new EnumMap<>(EnrollmentLane.class);
+        for (EnrollmentLane lane : EnrollmentLane.values())
+            lanes.put(lane, new LaneStats());
+        fastPathEnabled = System.getenv("ENROLLMENT_FAST_PATH") != null
+                && System.getenv("ENROLLMENT_FAST_PATH").equalsIgnoreCase("true");
+        fastPathMaxQueueDepth = System.getenv("ENROLLMENT_FAST_PATH_MAX_QUEUE_DEPTH") != null
+                ? Long.parseLong(System.getenv("ENROLLMENT_FAST_PATH_MAX_QUEUE_DEPTH"))
+                : 0;
+        fastPathMaxPoolUtilization = System.getenv("ENROLLMENT_FAST_PATH_MAX_POOL_UTILIZATION") != null
+                ? Double.parseDouble(System.getenv("ENROLLMENT_FAST_PATH_MAX_POOL_UTILIZATION"))
+                : 0.5;
+    }
+
+    public void onEnqueued(EnrollmentLane lane) {
+        lanes.get(lane).depth.incrementAndGet();
+    }
+
+    public void onProcessed(EnrollmentLane lane) {
+        // Commands enqueued before a restart are not counted
+        lanes.get(lane).depth.updateAndGet((d) -> d > 0 ? d - 1 : 0);
+    }
+
+    public void recordWait(EnrollmentLane lane, long waitMillis) {
+        LaneStats stats = lanes.get(lane);
+        stats.dispatchedCount.incrementAndGet();
+        stats.totalWaitMillis.addAndGet(Math.max(waitMillis, 0));
+        stats.maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+    }
+
+    public long getDepth(EnrollmentLane lane) {
+        return lanes.get(lane).depth.get();
+    }
+
+    public long getDepth() {
+        long depth = 0;
+        for (LaneStats stats : lanes.values())
+            depth += stats.depth.get();
+        return depth;
+    }
+
+    public boolean shouldRunInline(EnrollmentLane lane) {
+        return fastPathEnabled && getDepth(lane) <= fastPathMaxQueueDepth
+                && dataSource.getPoolUtilization() <= fastPathMaxPoolUtilization;
+    }
+
+    public ArrayList<LaneMetricsResponse> getLaneMetrics() {
+        ArrayList<LaneMetricsResponse> metrics = new ArrayList<>();
+        for (EnrollmentLane l : EnrollmentLane.values()) {
+            LaneStats stats = lanes.get(l);
+            long dispatched = stats.dispatchedCount.get();
+            metrics.add(new LaneMetricsResponse() {
+                {
+                    lane = l.name();
+                    depth = stats.depth.get();
+                    dispatchedCount = dispatched;
+                    averageWaitMillis = dispatched == 0 ? 0 : (double) stats.totalWaitMillis.get() / dispatched;
+                    maxWaitMillis = stats.maxWaitMillis.get();
+                }
+            });
+        }
+        return metrics;
+    }
+
+    private static class LaneStats {
+        public final AtomicLong depth = new AtomicLong();
+        public final AtomicLong dispatchedCount = new AtomicLong();
+        public final AtomicLong totalWaitMillis = new AtomicLong();
+        public final AtomicLong maxWaitMillis = new AtomicLong();
+    }
+}
@@ -0,0 +1,11 @@
+package com.ds;
+
+import java.util.UUID;
+
+public class EnrollmentRequestResponse {
+    public UUID id;
+    public String operation;
+    public String status;
+    public String reason;
+    public UUID enrollmentId;
+}
@@ -0,0 +1,162 @@
+package com.ds;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class EnrollmentRequestService {
+    public static final String PENDING = "PENDING";
+    public static final String SUCCEEDED = "SUCCEEDED";
+    public static final String FAILED = "FAILED";
+
+    @EJB
+    private ApiDataSource dataSource;
+
+    @EJB
+    private AdmissionControlService admissionControlService;
+
+    // Long-polling clients wait on these until the worker completes the request.
+    // A completion is kept while any client still waits on it, so a client
+    // giving up doesn't keep the others from being woken.
+    private ConcurrentHashMap<UUID, Completion> completions;
+
+    private int ttlHours;
+
+    @PostConstruct
+    public void init() {
+        completions = new ConcurrentHashMap<>();
+        ttlHours = System.getenv("ENROLLMENT_REQUEST_TTL_HOURS") != null
+                ? Integer.parseInt(System.getenv("ENROLLMENT_REQUEST_TTL_HOURS"))
+                : 24;
+    }
+
+    public void create(UUID id, UUID userId, String operation) throws SQLException {
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement(
+                        "INSERT INTO EnrollmentRequest (id, userId, operation, status) VALUES (?, ?, ?, 'PENDING')")) {
+            st.setObject(1, id);
+            st.setObject(2, userId);
+            st.setString(3, operation);
+            st.executeUpdate();
+        }
+    }
+
+    // Records the outcome as part of the worker's transaction
+    public void complete(Connection conn, UUID id, EnrollmentResult result) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement(String.format(
+                "UPDATE EnrollmentRequest SET status = '%s', reason = ?, enrollmentId = ?, completedAt = now() WHERE id = ?",
+                result.outcome.getSucceeded() ? SUCCEEDED : FAILED))) {
+            st.setString(1, result.outcome.name());
+            st.setObject(2, result.enrollmentId);
+            st.setObject(3, id);
+            st.executeUpdate();
+        }
+    }
+
+    // Marks a request as failed outside of the worker, e.g. when it could not be
+    // sent or was dead-lettered
+    public void fail(UUID id, String reason) {
+        setStatus(id, FAILED, reason);
+    }
+
+    public void reset(UUID id) {
+        setStatus(id, PENDING, null);
+    }
+
+    private void setStatus(UUID id, String status, String reason) {
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement(String.format(
+                        "UPDATE EnrollmentRequest SET status = '%s', reason = ?, completedAt = %s WHERE id = ?",
+                        status, status.equals(PENDING) ? "NULL" : "now()"))) {
+            st.setString(1, reason);
+            st.setObject(2, id);
+            st.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error updating enrollment request " + id + ":");
+            e.printStackTrace();
+        }
+        if (!status.equals(PENDING))
+            notifyCompleted(id);
+    }
+
+    public EnrollmentRequestResponse find(UUID id, UUID userId) throws SQLException {
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement(
+                        "SELECT id, operation, status, reason, enrollmentId FROM EnrollmentRequest WHERE id = ? AND userId = ?")) {
+            st.setObject(1, id);
+            st.setObject(2, userId);
+            ResultSet rs = st.executeQuery();
+            if (!rs.next())
+                return null;
+            return new EnrollmentRequestResponse() {
+                {
+                    id = rs.getObject("id", UUID.class);
+                    operation = rs.getString("operation");
+                    status = rs.getString("status");
+                    reason = rs.getString("reason");
+                    enrollmentId = rs.getObject("enrollmentId", UUID.class);
+                }
+            };
+        }
+    }
+
+    // Every call must be matched by a releaseCompletion once the client stops
+    // waiting
+    public CompletableFuture<Void> getCompletion(UUID id) {
+        return completions.compute(id, (_, completion) -> {
+            if (completion == null)
+                completion = new Completion();
+            completion.waiters++;
+            return completion;
+        }).future;
+    }
+
+    public void releaseCompletion(UUID id, CompletableFuture<Void> future) {
+        completions.computeIfPresent(id, (_, completion) -> {
+            if (completion.future != future)
+                return completion;
+            return --completion.waiters == 0 ? null : completion;
+        });
+    }
+
+    public void notifyCompleted(UUID id) {
+        admissionControlService.onCommandCompleted(id);
+        Completion completion = completions.remove(id);
+        if (completion != null)
+            completion.future.complete(null);
+    }
+
+    @Schedule(hour = "*", minute = "30", persistent = false)
+    public void evictExpired() {
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement(
+                        "DELETE FROM EnrollmentRequest WHERE createdAt < now() - make_interval(hours => ?)")) {
+            st.setInt(1, ttlHours);
+            st.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error evicting enrollment requests:");
+            e.printStackTrace();
+        }
+    }
+
+    // Waiters are only counted within ConcurrentHashMap.compute calls
+    private static class Completion {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        int waiters;
+    }
+}
@@ -0,0 +1,20 @@
+package com.ds;
+
+import java.util.UUID;
+
+public class EnrollmentResult {
+    public final EnrollmentOutcome outcome;
+    public final UUID enrollmentId;
+    // Course of the enrollment, if it was found
+    public final UUID courseId;
+
+    public EnrollmentResult(EnrollmentOutcome outcome, UUID enrollmentId) {
+        this(outcome, enrollmentId, null);
+    }
+
+    public EnrollmentResult(EnrollmentOutcome outcome, UUID enrollmentId, UUID courseId) {
+        this.outcome = outcome;
+        this.enrollmentId = enrollmentId;
+        this.courseId = courseId;
+    }
+}
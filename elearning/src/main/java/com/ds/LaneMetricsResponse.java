@@ -0,0 +1,9 @@
+package com.ds;
+
+public class LaneMetricsResponse {
+    public String lane;
+    public Long depth;
+    public Long dispatchedCount;
+    public Double averageWaitMillis;
+    public Long maxWaitMillis;
+}
@@ -0,0 +1,155 @@
+package com.ds;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+// Maintains the monthly partitions of Notification: creates upcoming ones and
+// retires those past the retention window by detaching them, either moving
+// them to the archive schema or dropping them. Unread notifications of a
+// retired partition are carried over to the default partition, which holds
+// every date no monthly partition covers, keeping their createdAt.
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class NotificationPartitionService {
+    private static final Pattern PARTITION_NAME_REGEX = Pattern.compile("^notification_p(\\d{4})(\\d{2})$");
+
+    @EJB
+    private ApiDataSource dataSource;
+
+    private int monthsAhead;
+    private int retentionMonths;
+    private boolean archive;
+    private int listWindowDays;
+
+    @PostConstruct
+    public void init() {
+        monthsAhead = getIntEnv("NOTIFICATION_PARTITION_MONTHS_AHEAD", 2);
+        retentionMonths = getIntEnv("NOTIFICATION_RETENTION_MONTHS", 3);
+        archive = System.getenv("NOTIFICATION_ARCHIVE") == null
+                || System.getenv("NOTIFICATION_ARCHIVE").equalsIgnoreCase("true");
+        listWindowDays = getIntEnv("NOTIFICATION_LIST_WINDOW_DAYS", 31);
+        managePartitions();
+    }
+
+    private int getIntEnv(String name, int defaultValue) {
+        return System.getenv(name) != null ? Integer.parseInt(System.getenv(name)) : defaultValue;
+    }
+
+    // Number of days of notifications listed unless older ones are requested
+    public int getListWindowDays() {
+        return listWindowDays;
+    }
+
+    @Schedule(hour = "3", minute = "15", persistent = false)
+    public void managePartitions() {
+        try (Connection conn = dataSource.getInstance().getConnection()) {
+            LocalDate currentMonth;
+            try (PreparedStatement st = conn.prepareStatement("SELECT date_trunc('month', now())::date AS month")) {
+                ResultSet rs = st.executeQuery();
+                rs.next();
+                currentMonth = rs.getObject("month", LocalDate.class);
+            }
+            for (int i = 0; i <= monthsAhead; ++i)
+                createPartition(conn, currentMonth.plusMonths(i));
+            LocalDate retentionStart = currentMonth.minusMonths(retentionMonths);
+            for (LocalDate month : listPartitions(conn))
+                if (month.isBefore(retentionStart))
+                    retirePartition(conn, month);
+        } catch (SQLException e) {
+            System.err.println("Error managing notification partitions:");
+            e.printStackTrace();
+        }
+    }
+
+    private String getPartitionName(LocalDate month) {
+        return String.format("notification_p%04d%02d", month.getYear(), month.getMonthValue());
+    }
+
+    private ArrayList<LocalDate> listPartitions(Connection conn) throws SQLException {
+        ArrayList<LocalDate> months = new ArrayList<>();
+        try (PreparedStatement st = conn.prepareStatement("""
+                SELECT pg_class.relname AS name
+                FROM pg_inherits JOIN pg_class ON pg_class.oid = pg_inherits.inhrelid
+                WHERE pg_inherits.inhparent = 'notification'::regclass""")) {
+            ResultSet rs = st.executeQuery();
+            while (rs.next()) {
+                Matcher matcher = PARTITION_NAME_REGEX.matcher(rs.getString("name"));
+                if (matcher.matches())
+                    months.add(LocalDate.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), 1));
+            }
+        }
+        return months;
+    }
+
+    private void execute(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement(sql)) {
+            st.execute();
+        }
+    }
+
+    private void createPartition(Connection conn, LocalDate month) throws SQLException {
+        String name = getPartitionName(month);
+        try (PreparedStatement st = conn.prepareStatement("SELECT to_regclass(?) IS NOT NULL AS exists")) {
+            st.setString(1, name);
+            ResultSet rs = st.executeQuery();
+            rs.next();
+            if (rs.getBoolean("exists"))
+                return;
+        }
+        String range = String.format("createdAt >= '%s' AND createdAt < '%s'", month, month.plusMonths(1));
+        conn.setAutoCommit(false);
+        try {
+            // Rows of this month that landed in the default partition have to move
+            // before the partition can be attached
+            execute(conn, String.format("CREATE TABLE %s (LIKE Notification INCLUDING DEFAULTS)", name));
+            execute(conn, String.format("""
+                    WITH Moved AS (DELETE FROM Notification_default WHERE %s RETURNING *)
+                    INSERT INTO %s SELECT * FROM Moved""", range, name));
+            execute(conn, String.format("ALTER TABLE Notification ATTACH PARTITION %s FOR VALUES FROM ('%s') TO ('%s')",
+                    name, month, month.plusMonths(1)));
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private void retirePartition(Connection conn, LocalDate month) throws SQLException {
+        String name = getPartitionName(month);
+        conn.setAutoCommit(false);
+        try {
+            execute(conn, String.format("ALTER TABLE Notification DETACH PARTITION %s", name));
+            // Once detached, the month's range is routed to the default partition
+            execute(conn, String.format("""
+                    WITH Moved AS (DELETE FROM %s WHERE NOT isRead RETURNING *)
+                    INSERT INTO Notification SELECT * FROM Moved""", name));
+            if (archive)
+                execute(conn, String.format("ALTER TABLE %s SET SCHEMA archive", name));
+            else
+                execute(conn, String.format("DROP TABLE %s", name));
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+}
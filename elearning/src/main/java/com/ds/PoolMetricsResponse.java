@@ -0,0 +1,13 @@
+package com.ds;
+
+public class PoolMetricsResponse {
+    public Integer active;
+    public Integer idle;
+    public Integer waiting;
+    public Long acquireCount;
+    public Double averageAcquireMillis;
+    public Double maxAcquireMillis;
+    public Double averageHoldMillis;
+    public Long maxHoldMillis;
+    public Long timeouts;
+}
@@ -0,0 +1,54 @@
+package com.ds;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+
+// Records how long callers wait for a pooled connection and how long they
+// hold it before returning it to the pool
+public class PoolMetricsTracker implements IMetricsTracker {
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong totalAcquireNanos = new AtomicLong();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+    private final AtomicLong usageCount = new AtomicLong();
+    private final AtomicLong totalUsageMillis = new AtomicLong();
+    private final AtomicLong maxUsageMillis = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquiredCount.incrementAndGet();
+        totalAcquireNanos.addAndGet(elapsedAcquiredNanos);
+        maxAcquireNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+    }
+
+    @Override
+    public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+        usageCount.incrementAndGet();
+        totalUsageMillis.addAndGet(elapsedBorrowedMillis);
+        maxUsageMillis.accumulateAndGet(elapsedBorrowedMillis, Math::max);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        timeoutCount.incrementAndGet();
+    }
+
+    public PoolMetricsResponse getMetrics(int activeConnections, int idleConnections, int waitingThreads) {
+        long acquired = acquiredCount.get();
+        long used = usageCount.get();
+        return new PoolMetricsResponse() {
+            {
+                active = activeConnections;
+                idle = idleConnections;
+                waiting = waitingThreads;
+                acquireCount = acquired;
+                averageAcquireMillis = acquired == 0 ? 0 : totalAcquireNanos.get() / acquired / 1e6;
+                maxAcquireMillis = maxAcquireNanos.get() / 1e6;
+                averageHoldMillis = used == 0 ? 0 : (double) totalUsageMillis.get() / used;
+                maxHoldMillis = maxUsageMillis.get();
+                timeouts = timeoutCount.get();
+            }
+        };
+    }
+}
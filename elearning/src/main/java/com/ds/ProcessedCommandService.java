@@ -0,0 +1,56 @@
+package com.ds;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.UUID;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class ProcessedCommandService {
+    public static final String COMMAND_ID_PROPERTY = "commandId";
+
+    @EJB
+    private ApiDataSource dataSource;
+
+    private int ttlHours;
+
+    @PostConstruct
+    public void init() {
+        ttlHours = System.getenv("PROCESSED_COMMAND_TTL_HOURS") != null
+                ? Integer.parseInt(System.getenv("PROCESSED_COMMAND_TTL_HOURS"))
+                : 24;
+    }
+
+    // Records the command in the ledger as part of the caller's transaction.
+    // Returns false if the command was already processed.
+    public boolean markProcessed(Connection conn, UUID commandId) throws SQLException {
+        try (PreparedStatement st = conn
+                .prepareStatement("INSERT INTO ProcessedCommand (id) VALUES (?) ON CONFLICT DO NOTHING")) {
+            st.setObject(1, commandId);
+            return st.executeUpdate() != 0;
+        }
+    }
+
+    @Schedule(hour = "*", minute = "0", persistent = false)
+    public void evictExpired() {
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement(
+                        "DELETE FROM ProcessedCommand WHERE processedAt < now() - make_interval(hours => ?)")) {
+            st.setInt(1, ttlHours);
+            st.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error evicting processed commands:");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.ds;
+
+public class ProducerMetricsResponse {
+    public Long outstandingSends;
+    public Long bufferedSends;
+    public Long sentCount;
+    public Long failedCount;
+    public Long batchCount;
+    public Double averageSendLatencyMillis;
+    public Double maxSendLatencyMillis;
+}
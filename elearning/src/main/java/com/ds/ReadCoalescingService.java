@@ -0,0 +1,91 @@
+package com.ds;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+// Single-flight execution of identical concurrent reads: the first caller for
+// a key runs the read, callers arriving while it is in flight wait for it and
+// share its result (or exception) instead of running it again. Nothing is
+// cached once the read completes. Keys must hold everything the result
+// depends on, and shared results must not be mutated by the callers.
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class ReadCoalescingService {
+    private ConcurrentHashMap<List<Object>, CompletableFuture<Object>> inFlight;
+    private ConcurrentHashMap<String, Counters> counters;
+
+    @PostConstruct
+    public void init() {
+        inFlight = new ConcurrentHashMap<>();
+        counters = new ConcurrentHashMap<>();
+    }
+
+    // The endpoint names the read in the metrics and is part of the key
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String endpoint, List<Object> key, CoalescedRead<T> read) throws SQLException {
+        Counters endpointCounters = counters.computeIfAbsent(endpoint, (_) -> new Counters());
+        List<Object> fullKey = new ArrayList<>(key.size() + 1);
+        fullKey.add(endpoint);
+        fullKey.addAll(key);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(fullKey, future);
+        if (running != null) {
+            endpointCounters.coalesced.incrementAndGet();
+            return (T) await(running);
+        }
+
+        endpointCounters.executed.incrementAndGet();
+        try {
+            T result = read.apply();
+            future.complete(result);
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(fullKey, future);
+        }
+    }
+
+    private Object await(CompletableFuture<Object> running) throws SQLException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a coalesced read", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException cause)
+                throw cause;
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    public ArrayList<CoalescingMetricsResponse> getMetrics() {
+        ArrayList<CoalescingMetricsResponse> metrics = new ArrayList<>();
+        counters.forEach((name, endpointCounters) -> metrics.add(new CoalescingMetricsResponse() {
+            {
+                endpoint = name;
+                executedCount = endpointCounters.executed.get();
+                coalescedCount = endpointCounters.coalesced.get();
+            }
+        }));
+        return metrics;
+    }
+
+    private static class Counters {
+        final AtomicLong executed = new AtomicLong();
+        final AtomicLong coalesced = new AtomicLong();
+    }
+}
@@ -0,0 +1,50 @@
+package com.ds;
+
+import java.sql.SQLException;
+import java.util.UUID;
+
+import jakarta.ejb.ActivationConfigProperty;
+import jakarta.ejb.EJB;
+import jakarta.ejb.EJBException;
+import jakarta.ejb.MessageDriven;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageListener;
+import jakarta.jms.TextMessage;
+
+// Consumes the events published by the user service. Deleted users are only
+// queued here; their data is removed in the background by UserPurgeService.
+@MessageDriven(activationConfig = {
+        @ActivationConfigProperty(propertyName = "destinationLookup", propertyValue = "queue/user-events"),
+        @ActivationConfigProperty(propertyName = "destinationType", propertyValue = "jakarta.jms.Queue"),
+        @ActivationConfigProperty(propertyName = "acknowledgeMode", propertyValue = "Auto-acknowledge"),
+        @ActivationConfigProperty(propertyName = "maxSession", propertyValue = "1") })
+public class UserEventWorker implements MessageListener {
+    @EJB
+    private UserPurgeService userPurgeService;
+
+    @Override
+    public void onMessage(Message rcvMessage) {
+        // USER_DELETED:userId
+        if (!(rcvMessage instanceof TextMessage)) {
+            System.err.println("Received invalid message type: " + rcvMessage.getClass().toString());
+            return;
+        }
+        try {
+            String txt = ((TextMessage) rcvMessage).getText();
+            String[] body = txt.split(":", -1);
+            if (body.length != 2 || !body[0].equals("USER_DELETED")) {
+                System.err.println("Ignoring unknown user event: " + txt);
+                return;
+            }
+            // Queuing the same user twice is a no-op, so redeliveries are harmless
+            userPurgeService.enqueue(UUID.fromString(body[1]));
+        } catch (JMSException | IllegalArgumentException e) {
+            System.err.println("Error handling user event:");
+            e.printStackTrace();
+        } catch (SQLException e) {
+            // Let the container roll back so that the broker redelivers the event
+            throw new EJBException(e);
+        }
+    }
+}
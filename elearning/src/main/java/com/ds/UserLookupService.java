@@ -0,0 +1,81 @@
+package com.ds;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.UUID;
+
+import com.ds.clientresponses.InstructorResponse;
+import com.ds.clientresponses.StudentResponse;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.Invocation;
+import jakarta.ws.rs.core.GenericType;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+// User lookups go through the user service's internal API, authenticated
+// with the shared service token rather than the end user's credentials.
+// Callers must not hold a database connection during the HTTP calls.
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class UserLookupService {
+    public static final int MAX_BATCH_SIZE = 1000;
+    private static final String SERVICE_TOKEN_HEADER = "X-Service-Token";
+
+    @EJB
+    private ApiClient apiClient;
+
+    private String userServiceUrl;
+    private String serviceToken;
+
+    @PostConstruct
+    public void init() {
+        userServiceUrl = System.getenv("USER_SERVICE_URL");
+        serviceToken = System.getenv("SERVICE_TOKEN");
+    }
+
+    private Invocation.Builder internalUserRequest(String path) {
+        return apiClient.getInstance().target(userServiceUrl + "/internal" + path)
+                .request(MediaType.APPLICATION_JSON).header(SERVICE_TOKEN_HEADER, serviceToken);
+    }
+
+    // Looks up the distinct students in batches. Unknown students are left out.
+    public HashMap<UUID, StudentResponse> getStudents(Collection<UUID> studentIds) {
+        HashMap<UUID, StudentResponse> students = new HashMap<>();
+        ArrayList<UUID> ids = new ArrayList<>(new HashSet<>(studentIds));
+        for (int i = 0; i < ids.size(); i += MAX_BATCH_SIZE) {
+            Response res = internalUserRequest("/students").post(
+                    Entity.json(ids.subList(i, Math.min(i + MAX_BATCH_SIZE, ids.size()))));
+            if (res.getStatus() != 200)
+                continue;
+            for (StudentResponse student : res.readEntity(new GenericType<ArrayList<StudentResponse>>() {
+            }))
+                students.put(student.id, student);
+        }
+        return students;
+    }
+
+    public HashMap<UUID, InstructorResponse> getInstructors(Collection<UUID> instructorIds) {
+        HashMap<UUID, InstructorResponse> instructors = new HashMap<>();
+        ArrayList<UUID> ids = new ArrayList<>(new HashSet<>(instructorIds));
+        for (int i = 0; i < ids.size(); i += MAX_BATCH_SIZE) {
+            Response res = internalUserRequest("/instructors").post(
+                    Entity.json(ids.subList(i, Math.min(i + MAX_BATCH_SIZE, ids.size()))));
+            if (res.getStatus() != 200)
+                continue;
+            for (InstructorResponse instructor : res.readEntity(new GenericType<ArrayList<InstructorResponse>>() {
+            }))
+                instructors.put(instructor.id, instructor);
+        }
+        return instructors;
+    }
+}
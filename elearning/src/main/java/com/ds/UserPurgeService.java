@@ -0,0 +1,171 @@
+package com.ds;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+// Removes the data of users deleted in the user service: their enrollments,
+// reviews, notifications and enrollment requests, hot and archived. Their
+// courses are marked as deleted and handed over to CoursePurgeService, which
+// notifies the enrolled students. Every statement handles at most
+// USER_PURGE_CHUNK_SIZE rows in its own transaction.
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class UserPurgeService {
+    // Each statement takes the user id and the chunk size and is repeated
+    // until it affects fewer rows than the chunk size
+    private static final String[] PURGE_STATEMENTS = new String[] {
+            "DELETE FROM Review WHERE id IN (SELECT id FROM Review WHERE studentId = ? LIMIT ?)",
+            """
+                    DELETE FROM Notification
+                    WHERE (id, createdAt) IN (SELECT id, createdAt FROM Notification WHERE userId = ? LIMIT ?)""",
+            """
+                    DELETE FROM EnrollmentRequest
+                    WHERE id IN (SELECT id FROM EnrollmentRequest WHERE userId = ? LIMIT ?)""",
+            """
+                    WITH Deleted AS (
+                        UPDATE Course SET status = 'DELETED'
+                        WHERE id IN (SELECT id FROM Course WHERE instructorId = ? AND status <> 'DELETED' LIMIT ?)
+                        RETURNING id)
+                    INSERT INTO CoursePurge (courseId) SELECT id FROM Deleted ON CONFLICT DO NOTHING""",
+            """
+                    DELETE FROM archive.Enrollment
+                    WHERE id IN (SELECT id FROM archive.Enrollment WHERE studentId = ? LIMIT ?)""",
+            "DELETE FROM archive.Review WHERE id IN (SELECT id FROM archive.Review WHERE studentId = ? LIMIT ?)",
+            """
+                    DELETE FROM archive.Enrollment
+                    WHERE id IN (
+                        SELECT Enrollment.id
+                        FROM archive.Enrollment AS Enrollment
+                            JOIN archive.Course AS Course ON Course.id = Enrollment.courseId
+                        WHERE Course.instructorId = ?
+                        LIMIT ?)""",
+            """
+                    DELETE FROM archive.Review
+                    WHERE id IN (
+                        SELECT Review.id
+                        FROM archive.Review AS Review
+                            JOIN archive.Course AS Course ON Course.id = Review.courseId
+                        WHERE Course.instructorId = ?
+                        LIMIT ?)""",
+            "DELETE FROM archive.Course WHERE id IN (SELECT id FROM archive.Course WHERE instructorId = ? LIMIT ?)" };
+
+    @EJB
+    private ApiDataSource dataSource;
+
+    @EJB
+    private DateTimeService dateTimeService;
+
+    @EJB
+    private CourseCatalog courseCatalog;
+
+    private int chunkSize;
+    private AtomicBoolean purging;
+
+    @PostConstruct
+    public void init() {
+        chunkSize = System.getenv("USER_PURGE_CHUNK_SIZE") != null
+                ? Integer.parseInt(System.getenv("USER_PURGE_CHUNK_SIZE"))
+                : 1000;
+        purging = new AtomicBoolean(false);
+    }
+
+    public void enqueue(UUID userId) throws SQLException {
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn
+                        .prepareStatement("INSERT INTO UserPurge (userId) VALUES (?) ON CONFLICT DO NOTHING")) {
+            st.setObject(1, userId);
+            st.executeUpdate();
+        }
+    }
+
+    @Schedule(hour = "*", minute = "*", second = "30", persistent = false)
+    public void purgeDeletedUsers() {
+        // A run may take longer than the schedule's period
+        if (!purging.compareAndSet(false, true))
+            return;
+        try (Connection conn = dataSource.getInstance().getConnection()) {
+            ArrayList<UUID> userIds = listPendingPurges(conn);
+            for (UUID userId : userIds)
+                purgeUser(conn, userId);
+            // Enrollments, reviews and courses of any number of courses changed
+            if (!userIds.isEmpty())
+                courseCatalog.rebuild();
+        } catch (SQLException e) {
+            System.err.println("Error purging deleted users:");
+            e.printStackTrace();
+        } finally {
+            purging.set(false);
+        }
+    }
+
+    private ArrayList<UUID> listPendingPurges(Connection conn) throws SQLException {
+        ArrayList<UUID> userIds = new ArrayList<>();
+        try (PreparedStatement st = conn.prepareStatement("SELECT userId FROM UserPurge ORDER BY requestedAt")) {
+            ResultSet rs = st.executeQuery();
+            while (rs.next())
+                userIds.add(rs.getObject("userId", UUID.class));
+        }
+        return userIds;
+    }
+
+    private void purgeUser(Connection conn, UUID userId) throws SQLException {
+        while (deleteEnrollments(conn, userId) == chunkSize)
+            ;
+        for (String query : PURGE_STATEMENTS) {
+            try (PreparedStatement st = conn.prepareStatement(query)) {
+                st.setObject(1, userId);
+                st.setInt(2, chunkSize);
+                while (st.executeUpdate() == chunkSize)
+                    ;
+            }
+        }
+        try (PreparedStatement st = conn.prepareStatement("DELETE FROM UserPurge WHERE userId = ?")) {
+            st.setObject(1, userId);
+            st.executeUpdate();
+        }
+    }
+
+    // Seats freed by the student's accepted or pending enrollments go to the
+    // waitlists of their courses
+    private int deleteEnrollments(Connection conn, UUID studentId) throws SQLException {
+        int deleted = 0;
+        HashSet<UUID> freedCourseIds = new HashSet<>();
+        try (PreparedStatement st = conn.prepareStatement("""
+                DELETE FROM Enrollment
+                WHERE id IN (SELECT id FROM Enrollment WHERE studentId = ? LIMIT ?)
+                RETURNING courseId, status""")) {
+            st.setObject(1, studentId);
+            st.setInt(2, chunkSize);
+            ResultSet rs = st.executeQuery();
+            while (rs.next()) {
+                ++deleted;
+                String status = rs.getString("status");
+                if (status.equals("ACCEPTED") || status.equals("PENDING"))
+                    freedCourseIds.add(rs.getObject("courseId", UUID.class));
+            }
+        }
+        for (UUID courseId : freedCourseIds) {
+            try (PreparedStatement st = conn.prepareStatement("SELECT promote_waitlisted(?, ?)")) {
+                st.setObject(1, courseId);
+                st.setLong(2, dateTimeService.getTimestamp() / 1000L);
+                st.executeQuery();
+            }
+        }
+        return deleted;
+    }
+}
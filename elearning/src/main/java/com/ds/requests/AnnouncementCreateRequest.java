@@ -0,0 +1,6 @@
+package com.ds.requests;
+
+public class AnnouncementCreateRequest {
+    public String title;
+    public String body;
+}
@@ -0,0 +1,10 @@
+package com.ds.requests;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+public class BulkEnrollmentUpdateRequest {
+    public ArrayList<UUID> accept;
+    public ArrayList<UUID> reject;
+    public Integer acceptFirst;
+}
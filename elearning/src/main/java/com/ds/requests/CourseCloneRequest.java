@@ -0,0 +1,7 @@
+package com.ds.requests;
+
+public class CourseCloneRequest {
+    public Long fromDate;
+    public Long toDate;
+    public Long shift;
+}
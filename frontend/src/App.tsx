@@ -73,6 +73,7 @@ interface UsageResponse {
   numberOfAcceptedEnrollments: number;
   numberOfRejectedEnrollments: number;
   numberOfPendingEnrollments: number;
+  numberOfWaitlistedEnrollments: number;
 }
 
 interface InstructorResponse {
@@ -663,6 +664,7 @@ const AdminPlatformUsagePage = (props: { authToken: string }) => {
     numberOfPendingEnrollments: 0,
     numberOfRejectedEnrollments: 0,
     numberOfStudents: 0,
+    numberOfWaitlistedEnrollments: 0,
   });
   useEffect(() => {
     (async () => {
@@ -706,6 +708,10 @@ const AdminPlatformUsagePage = (props: { authToken: string }) => {
         <b>numberOfPendingEnrollments:</b> {usage.numberOfPendingEnrollments}
       </label>
       <br />
+      <label>
+        <b>numberOfWaitlistedEnrollments:</b> {usage.numberOfWaitlistedEnrollments}
+      </label>
+      <br />
     </div>
   );
 };
@@ -18,6 +18,19 @@ const sendRequest = (method, url, body) => {
   return fetch(url, opts);
 };
 
+// Sends a body that is not JSON, e.g. a CSV import
+const sendRawRequest = (method, url, contentType, body) => {
+  const opts = {
+    method,
+    headers: {
+      'Content-Type': contentType
+    },
+    body
+  };
+  if (authToken !== undefined) opts.headers['Authorization'] = `Basic ${authToken}`;
+  return fetch(url, opts);
+};
+
 const login = async (nameOrEmail, password) => {
   console.log(`Log in: (${nameOrEmail}, ${password})`);
   const res = await sendRequest('POST', `${USER_SERVICE_URL}/login`, {
@@ -30,6 +43,12 @@ const login = async (nameOrEmail, password) => {
   authToken = JSON.parse(text)['token'];
 };
 
+const getAuthToken = () => authToken;
+
+const setAuthToken = (token) => {
+  authToken = token;
+};
+
 const currentTimeSeconds = () => Math.floor(Date.now() / 1000);
 
 const markAllNotificationsAsRead = async () => {
@@ -65,7 +84,10 @@ const timeTravel = async (newDate) => {
 
 module.exports = {
   sendRequest,
+  sendRawRequest,
   login,
+  getAuthToken,
+  setAuthToken,
   markAllNotificationsAsRead,
   sleep,
   currentTimeSeconds,
@@ -1,6 +1,8 @@
 const {
   sendRequest,
   login,
+  getAuthToken,
+  setAuthToken,
   markAllNotificationsAsRead,
   sleep,
   currentTimeSeconds,
@@ -786,6 +788,13 @@ const assert = require('assert');
     const text = await res.text();
     console.log(text);
     assert.equal(res.status, 202);
+    // Identical requests are collapsed while pending, wait for this one to be processed
+    const requestId = JSON.parse(text)['id'];
+    const requestRes = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/enrollment-request/${requestId}?wait=10`);
+    const requestText = await requestRes.text();
+    console.log(requestText);
+    assert.equal(requestRes.status, 200);
+    assert.equal(JSON.parse(requestText)['status'], 'SUCCEEDED');
   }
 
   {
@@ -1377,7 +1386,8 @@ const assert = require('assert');
       numberOfPendingCourses: 1,
       numberOfAcceptedEnrollments: 2,
       numberOfRejectedEnrollments: 1,
-      numberOfPendingEnrollments: 1
+      numberOfPendingEnrollments: 1,
+      numberOfWaitlistedEnrollments: 0
     });
   }
 
@@ -1510,7 +1520,8 @@ const assert = require('assert');
       numberOfPendingCourses: 1,
       numberOfAcceptedEnrollments: 2,
       numberOfRejectedEnrollments: 1,
-      numberOfPendingEnrollments: 0
+      numberOfPendingEnrollments: 0,
+      numberOfWaitlistedEnrollments: 0
     });
   }
 
@@ -1788,6 +1799,40 @@ const assert = require('assert');
     ]);
   }
 
+  {
+    console.log('s3 tries to view the top rated courses with an invalid limit');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/top?limit=101`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 400);
+    assert.deepStrictEqual(JSON.parse(text), { message: 'limit must be between 1 and 100' });
+  }
+
+  {
+    console.log('s3 views the top rated courses (only reviewed courses are ranked)');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/top?limit=5`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    for (const course of body) delete course.id;
+    assert.deepStrictEqual(body, [
+      {
+        name: 'i1c1',
+        instructorId: i1Id,
+        instructorName: 'i1',
+        averageStars: 2.5,
+        numberOfReviews: 2,
+        numberOfEnrollments: 2,
+        category: 'Machine learning',
+        startDate: i1C1Start,
+        endDate: i1C1End,
+        capacity: 300,
+        status: 'ACCEPTED'
+      }
+    ]);
+  }
+
   await login('s1', 's1123');
 
   {
@@ -1814,6 +1859,9 @@ const assert = require('assert');
     });
   }
 
+  await login('s1', 's1123');
+  const s1StudentToken = getAuthToken();
+
   await login('admin', 'admin');
 
   {
@@ -1825,6 +1873,16 @@ const assert = require('assert');
     assert.equal(res.status, 200);
   }
 
+  {
+    console.log('s1 uses its token from before the role change');
+    const adminToken = getAuthToken();
+    setAuthToken(s1StudentToken);
+    const res = await sendRequest('GET', `${USER_SERVICE_URL}/user`);
+    console.log(await res.text());
+    assert.equal(res.status, 401);
+    setAuthToken(adminToken);
+  }
+
   {
     console.log('admin lists all users');
     const res = await sendRequest('GET', `${USER_SERVICE_URL}/users`);
@@ -1902,10 +1960,16 @@ const assert = require('assert');
       numberOfPendingCourses: 1,
       numberOfAcceptedEnrollments: 2,
       numberOfRejectedEnrollments: 1,
-      numberOfPendingEnrollments: 0
+      numberOfPendingEnrollments: 0,
+      numberOfWaitlistedEnrollments: 0
     });
   }
 
+  await login('i1', 'i1123');
+  const i1Token = getAuthToken();
+
+  await login('s1', 's1123');
+
   {
     console.log('s1 deletes i1');
     const res = await sendRequest('DELETE', `${USER_SERVICE_URL}/user/${i1Id}`);
@@ -1913,6 +1977,16 @@ const assert = require('assert');
     assert.equal(res.status, 200);
   }
 
+  {
+    console.log('i1 uses its token after being deleted');
+    const s1Token = getAuthToken();
+    setAuthToken(i1Token);
+    const res = await sendRequest('GET', `${USER_SERVICE_URL}/user`);
+    console.log(await res.text());
+    assert.equal(res.status, 401);
+    setAuthToken(s1Token);
+  }
+
   {
     console.log('s1 changes the name of i2 to x2');
     const res = await sendRequest('PUT', `${USER_SERVICE_URL}/user/${i2Id}`, {
@@ -1948,6 +2022,34 @@ const assert = require('assert');
 
   await login('x2', 'i2123');
 
+  {
+    console.log('x2 changes its password');
+    const oldToken = getAuthToken();
+    let res = await sendRequest('PUT', `${USER_SERVICE_URL}/user`, {
+      password: 'x2123'
+    });
+    let text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const newToken = JSON.parse(text)['token'];
+
+    console.log('x2 uses its token from before the password change');
+    res = await sendRequest('GET', `${USER_SERVICE_URL}/user`);
+    console.log(await res.text());
+    assert.equal(res.status, 401);
+    assert.notEqual(newToken, oldToken);
+
+    console.log('x2 uses the token returned by the password change');
+    setAuthToken(newToken);
+    res = await sendRequest('GET', `${USER_SERVICE_URL}/user`);
+    text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.equal(JSON.parse(text)['name'], 'x2');
+  }
+
+  await login('x2', 'x2123');
+
   console.log('All tests passed');
 })();
 
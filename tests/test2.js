@@ -2,6 +2,7 @@ const {
   USER_SERVICE_URL,
   ELEARNING_SERVICE_URL,
   sendRequest,
+  sendRawRequest,
   login,
   currentTimeSeconds,
   sleep,
@@ -75,6 +76,34 @@ const setFailure = async () => {
     assert.equal(res.status, 200);
   }
 
+  {
+    console.log('Register Student s3');
+    const res = await sendRequest('POST', `${USER_SERVICE_URL}/register`, {
+      name: 's3',
+      email: 's3@s3.com',
+      password: 's3123',
+      affiliation: 'cu',
+      bio: 'This is a third student',
+      role: 'STUDENT'
+    });
+    console.log(await res.text());
+    assert.equal(res.status, 200);
+  }
+
+  {
+    console.log('Register Student s4');
+    const res = await sendRequest('POST', `${USER_SERVICE_URL}/register`, {
+      name: 's4',
+      email: 's4@s4.com',
+      password: 's4123',
+      affiliation: 'cu',
+      bio: 'This is a fourth student',
+      role: 'STUDENT'
+    });
+    console.log(await res.text());
+    assert.equal(res.status, 200);
+  }
+
   await login('admin', 'admin');
 
   let i1C1Id = undefined;
@@ -215,7 +244,7 @@ const setFailure = async () => {
   }
 
   {
-    console.log('s2 tries to enroll in i1c1 (course is full)');
+    console.log('s2 enrolls in i1c1 (course is full, joins the waitlist)');
     const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/${i1C1Id}/enrollment`);
     const text = await res.text();
     console.log(text);
@@ -239,7 +268,7 @@ const setFailure = async () => {
     assert.deepStrictEqual(body, [
       {
         title: 'Course enrollment status',
-        body: `Can't enroll in course of id: ${i1C1Id} since it is full.`,
+        body: `'i1c1' is full, you were added to its waitlist at position 1.`,
         isRead: false
       },
       {
@@ -250,7 +279,933 @@ const setFailure = async () => {
     ]);
   }
 
+  {
+    console.log('s2 checks its waitlist position in i1c1');
+    let res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/enrollment`);
+    let text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const enrollment = JSON.parse(text).find((e) => e.courseId === i1C1Id);
+    assert.equal(enrollment.status, 'WAITLISTED');
+    res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/enrollment/${enrollment.id}/waitlist`);
+    text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.equal(JSON.parse(text).position, 1);
+  }
+
+  await markAllNotificationsAsRead();
+
+  await login('s3', 's3123');
+
+  {
+    console.log('s3 enrolls in i1c1 (joins the waitlist behind s2)');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/${i1C1Id}/enrollment`);
+    console.log(await res.text());
+    assert.equal(res.status, 202);
+    await sleep(50);
+  }
+
+  await markAllNotificationsAsRead();
+
+  await login('i1', 'i1123');
+
+  {
+    console.log('i1 raises the capacity of i1c1 to 2');
+    const res = await sendRequest('PUT', `${ELEARNING_SERVICE_URL}/course/${i1C1Id}`, {
+      capacity: 2
+    });
+    console.log(await res.text());
+    assert.equal(res.status, 200);
+  }
+
+  await login('s2', 's2123');
+
+  {
+    console.log('s2 views its enrollments (promoted from the waitlist)');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/enrollment`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const enrollment = JSON.parse(text).find((e) => e.courseId === i1C1Id);
+    assert.equal(enrollment.status, 'PENDING');
+  }
+
+  {
+    console.log('s2 lists unread notifications');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/notification?isRead=false`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    body.forEach((notification) => delete notification.id);
+    assert.deepStrictEqual(body, [
+      {
+        title: 'Course enrollment status',
+        body: `A seat opened up in 'i1c1', your enrollment request was moved from the waitlist and is now pending.`,
+        isRead: false
+      }
+    ]);
+  }
+
+  await markAllNotificationsAsRead();
+
+  await login('s4', 's4123');
+
+  {
+    console.log('s4 enrolls in i1c1 while the promoted i1c1s2 is still pending (joins the waitlist behind s3)');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/${i1C1Id}/enrollment`);
+    console.log(await res.text());
+    assert.equal(res.status, 202);
+    await sleep(50);
+  }
+
+  {
+    console.log('s4 lists unread notifications');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/notification?isRead=false`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    body.forEach((notification) => delete notification.id);
+    assert.deepStrictEqual(body, [
+      {
+        title: 'Course enrollment status',
+        body: `'i1c1' is full, you were added to its waitlist at position 2.`,
+        isRead: false
+      }
+    ]);
+  }
+
+  await markAllNotificationsAsRead();
+
+  await login('s3', 's3123');
+
+  {
+    console.log('s3 is still first on the waitlist of i1c1 and was not promoted');
+    let res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/enrollment`);
+    let text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const enrollment = JSON.parse(text).find((e) => e.courseId === i1C1Id);
+    assert.equal(enrollment.status, 'WAITLISTED');
+    res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/enrollment/${enrollment.id}/waitlist`);
+    text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.equal(JSON.parse(text).position, 1);
+  }
+
+  {
+    console.log('s3 has no unread notifications');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/notification?isRead=false`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.deepStrictEqual(JSON.parse(text), []);
+  }
+
+  await login('i1', 'i1123');
+
+  {
+    console.log('i1 creates a course (i1c2)');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course`, {
+      name: 'i1c2',
+      description: 'i1c2d',
+      startDate: currentTimeSeconds() + 7 * 24 * 60 * 60,
+      endDate: currentTimeSeconds() + 14 * 24 * 60 * 60,
+      category: 'Machine learning',
+      capacity: 2
+    });
+    console.log(await res.text());
+    assert.equal(res.status, 200);
+  }
+
+  await login('admin', 'admin');
+
+  let i1C2Id = undefined;
+
+  {
+    console.log('admin views available courses');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    i1C2Id = JSON.parse(text).find((course) => course.name === 'i1c2').id;
+  }
+
+  {
+    console.log('admin accepts i1c2');
+    const res = await sendRequest('PUT', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}`, {
+      status: 'ACCEPTED'
+    });
+    console.log(await res.text());
+    assert.equal(res.status, 200);
+  }
+
+  await login('s1', 's1123');
+
+  {
+    console.log('s1 enrolls in i1c2');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/enrollment`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 202);
+    const requestId = JSON.parse(text)['id'];
+    const requestRes = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/enrollment-request/${requestId}?wait=10`);
+    const requestText = await requestRes.text();
+    console.log(requestText);
+    assert.equal(requestRes.status, 200);
+    assert.equal(JSON.parse(requestText)['status'], 'SUCCEEDED');
+  }
+
+  await markAllNotificationsAsRead();
+
+  await login('s3', 's3123');
+
+  {
+    console.log('s3 enrolls in i1c2');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/enrollment`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 202);
+    const requestId = JSON.parse(text)['id'];
+    const requestRes = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/enrollment-request/${requestId}?wait=10`);
+    const requestText = await requestRes.text();
+    console.log(requestText);
+    assert.equal(requestRes.status, 200);
+    assert.equal(JSON.parse(requestText)['status'], 'SUCCEEDED');
+  }
+
+  await markAllNotificationsAsRead();
+
+  await login('s4', 's4123');
+
+  {
+    console.log('s4 enrolls in i1c2');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/enrollment`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 202);
+    const requestId = JSON.parse(text)['id'];
+    const requestRes = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/enrollment-request/${requestId}?wait=10`);
+    const requestText = await requestRes.text();
+    console.log(requestText);
+    assert.equal(requestRes.status, 200);
+    assert.equal(JSON.parse(requestText)['status'], 'SUCCEEDED');
+  }
+
+  await markAllNotificationsAsRead();
+
+  {
+    console.log('s4 tries to bulk update the enrollments of i1c2');
+    const res = await sendRequest('PUT', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/enrollment`, {
+      acceptFirst: 2
+    });
+    console.log(await res.text());
+    assert.equal(res.status, 403);
+  }
+
+  await login('i1', 'i1123');
+
+  await markAllNotificationsAsRead();
+
+  let i1C2S1Id = undefined;
+  let i1C2S3Id = undefined;
+  let i1C2S4Id = undefined;
+  {
+    console.log('i1 views enrollments on i1c2');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/enrollment`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    for (const enrollment of JSON.parse(text)) {
+      if (enrollment.studentName === 's1') i1C2S1Id = enrollment.id;
+      else if (enrollment.studentName === 's3') i1C2S3Id = enrollment.id;
+      else if (enrollment.studentName === 's4') i1C2S4Id = enrollment.id;
+    }
+  }
+
+  {
+    console.log('i1 tries to bulk update i1c2 with an empty body');
+    const res = await sendRequest('PUT', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/enrollment`, {});
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 400);
+    assert.deepStrictEqual(JSON.parse(text), { message: 'Empty body' });
+  }
+
+  {
+    console.log('i1 tries to both accept and reject i1c2s3');
+    const res = await sendRequest('PUT', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/enrollment`, {
+      accept: [i1C2S3Id],
+      reject: [i1C2S3Id]
+    });
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 400);
+    assert.deepStrictEqual(JSON.parse(text), { message: "Can't both accept and reject an enrollment" });
+  }
+
+  {
+    console.log('i1 accepts i1c2s1, rejects i1c2s3 and accepts the first other pending enrollment');
+    const res = await sendRequest('PUT', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/enrollment`, {
+      accept: [i1C2S1Id],
+      reject: [i1C2S3Id],
+      acceptFirst: 1
+    });
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 202);
+    const requestId = JSON.parse(text)['id'];
+    const requestRes = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/enrollment-request/${requestId}?wait=10`);
+    const requestText = await requestRes.text();
+    console.log(requestText);
+    assert.equal(requestRes.status, 200);
+    assert.equal(JSON.parse(requestText)['reason'], 'BULK_APPLIED');
+  }
+
+  {
+    console.log('i1 views enrollments on i1c2 after the bulk update');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/enrollment`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    body.sort((a, b) => {
+      if (a.studentName === b.studentName) return 0;
+      if (a.studentName < b.studentName) return -1;
+      if (a.studentName > b.studentName) return 1;
+    });
+    body.forEach((enrollment) => {
+      delete enrollment.id;
+      delete enrollment.studentId;
+    });
+    assert.deepStrictEqual(body, [
+      {
+        studentName: 's1',
+        status: 'ACCEPTED'
+      },
+      {
+        studentName: 's3',
+        status: 'REJECTED'
+      },
+      {
+        studentName: 's4',
+        status: 'ACCEPTED'
+      }
+    ]);
+  }
+
+  {
+    console.log('i1 lists unread notifications');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/notification?isRead=false`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    body.forEach((notification) => delete notification.id);
+    assert.deepStrictEqual(body, [
+      {
+        title: 'Course enrollment status',
+        body: `Accepted 2 and rejected 1 enrollments for 'i1c2'.`,
+        isRead: false
+      }
+    ]);
+  }
+
   await markAllNotificationsAsRead();
 
+  {
+    console.log('i1 tries to accept the rejected i1c2s3');
+    const res = await sendRequest('PUT', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/enrollment`, {
+      accept: [i1C2S3Id]
+    });
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 202);
+    const requestId = JSON.parse(text)['id'];
+    const requestRes = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/enrollment-request/${requestId}?wait=10`);
+    const requestText = await requestRes.text();
+    console.log(requestText);
+    assert.equal(requestRes.status, 200);
+  }
+
+  {
+    console.log('i1 lists unread notifications');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/notification?isRead=false`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    body.forEach((notification) => delete notification.id);
+    assert.deepStrictEqual(body, [
+      {
+        title: 'Course enrollment status',
+        body:
+          `Accepted 0 and rejected 0 enrollments for 'i1c2'.` +
+          ' Some enrollments were not accepted since they were not pending or the course is full.',
+        isRead: false
+      }
+    ]);
+  }
+
+  await markAllNotificationsAsRead();
+
+  await login('s4', 's4123');
+
+  {
+    console.log('s4 lists unread notifications (accepted through acceptFirst)');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/notification?isRead=false`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    body.forEach((notification) => delete notification.id);
+    assert.deepStrictEqual(body, [
+      {
+        title: 'Course enrollment status',
+        body: 'Your enrollment for i1c2 has been accepted.',
+        isRead: false
+      }
+    ]);
+  }
+
+  await markAllNotificationsAsRead();
+
+  {
+    console.log('s4 tries to post an announcement to i1c2');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/announcement`, {
+      title: 'Exam date',
+      body: 'The exam is on the last day of the course.'
+    });
+    console.log(await res.text());
+    assert.equal(res.status, 403);
+  }
+
+  await login('i1', 'i1123');
+
+  {
+    console.log('i1 tries to post an announcement with an empty title');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/announcement`, {
+      title: ' ',
+      body: 'The exam is on the last day of the course.'
+    });
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 400);
+    assert.deepStrictEqual(JSON.parse(text), { message: 'Empty body' });
+  }
+
+  {
+    console.log('i1 tries to post an announcement with a too long body');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/announcement`, {
+      title: 'Exam date',
+      body: 'a'.repeat(1025)
+    });
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 400);
+    assert.deepStrictEqual(JSON.parse(text), { message: 'Title or body too long (max 255 and 1024 characters)' });
+  }
+
+  {
+    console.log('i1 posts an announcement to i1c2');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/announcement`, {
+      title: 'Exam date',
+      body: 'The exam is on the last day of the course.'
+    });
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 202);
+    const requestId = JSON.parse(text)['id'];
+    const requestRes = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/enrollment-request/${requestId}?wait=10`);
+    const requestText = await requestRes.text();
+    console.log(requestText);
+    assert.equal(requestRes.status, 200);
+    assert.equal(JSON.parse(requestText)['status'], 'SUCCEEDED');
+  }
+
+  {
+    console.log('i1 lists unread notifications');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/notification?isRead=false`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    body.forEach((notification) => delete notification.id);
+    assert.deepStrictEqual(body, [
+      {
+        title: 'Course enrollment status',
+        body: `Your announcement was sent to 2 students of 'i1c2'.`,
+        isRead: false
+      }
+    ]);
+  }
+
+  await markAllNotificationsAsRead();
+
+  await login('s4', 's4123');
+
+  {
+    console.log('s4 lists unread notifications (accepted in i1c2)');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/notification?isRead=false`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    body.forEach((notification) => delete notification.id);
+    assert.deepStrictEqual(body, [
+      {
+        title: 'Exam date',
+        body: 'The exam is on the last day of the course.',
+        isRead: false
+      }
+    ]);
+  }
+
+  await markAllNotificationsAsRead();
+
+  await login('s3', 's3123');
+
+  {
+    console.log('s3 did not receive the announcement (rejected in i1c2)');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/notification?isRead=false`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.deepStrictEqual(
+      JSON.parse(text).filter((notification) => notification.title === 'Exam date'),
+      []
+    );
+  }
+
+  await markAllNotificationsAsRead();
+
+  {
+    console.log('s3 tries to import users');
+    const res = await sendRawRequest(
+      'POST',
+      `${USER_SERVICE_URL}/users/import`,
+      'text/csv',
+      'name,email,password,role,experience,bio,affiliation\ns5,s5@s5.com,s5123,STUDENT,,Imported student,cu\n'
+    );
+    console.log(await res.text());
+    assert.equal(res.status, 403);
+  }
+
+  await login('admin', 'admin');
+
+  {
+    console.log('admin tries to import users from an empty CSV');
+    const res = await sendRawRequest('POST', `${USER_SERVICE_URL}/users/import`, 'text/csv', '');
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 400);
+    assert.deepStrictEqual(JSON.parse(text), { message: 'Empty body' });
+  }
+
+  {
+    console.log('admin imports users from a CSV');
+    const res = await sendRawRequest(
+      'POST',
+      `${USER_SERVICE_URL}/users/import`,
+      'text/csv',
+      [
+        'name,email,password,role,experience,bio,affiliation',
+        's5,s5@s5.com,s5123,STUDENT,,Imported student,cu',
+        'i2,i2@i2.com,i2123,INSTRUCTOR,5,"Imported instructor, with a comma",cu',
+        's6,s6@s6.com,s6123,ADMIN,,Imported admin,cu',
+        's5,s5b@s5.com,s5123,STUDENT,,Imported twice,cu',
+        's1,s1b@s1.com,s1123,STUDENT,,Name already taken,cu'
+      ].join('\n')
+    );
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.deepStrictEqual(JSON.parse(text), {
+      imported: 2,
+      errors: [
+        { row: 3, name: 's6', email: 's6@s6.com', error: 'Invalid role' },
+        { row: 4, name: 's5', email: 's5b@s5.com', error: 'Duplicate name or email in the import' },
+        { row: 5, name: 's1', email: 's1b@s1.com', error: 'A user with this name already exists' }
+      ]
+    });
+  }
+
+  {
+    console.log('admin imports users from NDJSON');
+    const res = await sendRawRequest(
+      'POST',
+      `${USER_SERVICE_URL}/users/import`,
+      'application/x-ndjson',
+      [
+        JSON.stringify({
+          name: 's7',
+          email: 's7@s7.com',
+          password: 's7123',
+          role: 'STUDENT',
+          bio: 'Imported student',
+          affiliation: 'cu'
+        }),
+        JSON.stringify({
+          name: 's8',
+          email: 's5@s5.com',
+          password: 's8123',
+          role: 'STUDENT',
+          bio: 'Imported student',
+          affiliation: 'cu'
+        }),
+        '{"name": "s9"'
+      ].join('\n')
+    );
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    assert.equal(body.imported, 1);
+    assert.equal(body.errors.length, 2);
+    assert.deepStrictEqual(body.errors[0], {
+      row: 2,
+      name: 's8',
+      email: 's5@s5.com',
+      error: 'A user with this email already exists'
+    });
+    assert.equal(body.errors[1].row, 3);
+    assert.equal(body.errors[1].error, 'Incomplete body');
+  }
+
+  await login('s5', 's5123');
+  await login('i2', 'i2123');
+  await login('s7', 's7123');
+
+  {
+    console.log('s7 tries to import courses');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/import`, []);
+    console.log(await res.text());
+    assert.equal(res.status, 403);
+  }
+
+  await login('i2', 'i2123');
+
+  let i2Id = undefined;
+  {
+    console.log('i2 views its user');
+    const res = await sendRequest('GET', `${USER_SERVICE_URL}/user`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    i2Id = JSON.parse(text).id;
+  }
+
+  {
+    console.log('i2 tries to import courses that are not in an array');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/import`, { name: 'i2c1' });
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 400);
+    assert.deepStrictEqual(JSON.parse(text), { message: 'Expected an array of courses' });
+  }
+
+  const i2C1Start = currentTimeSeconds() + 7 * 24 * 60 * 60;
+  const i2C1End = currentTimeSeconds() + 14 * 24 * 60 * 60;
+  {
+    console.log('i2 imports courses from JSON');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/import`, [
+      {
+        name: 'i2c1',
+        description: 'i2c1d',
+        startDate: i2C1Start,
+        endDate: i2C1End,
+        category: 'Databases',
+        capacity: 5
+      },
+      {
+        name: 'i2c2',
+        description: 'i2c2d',
+        startDate: i2C1End,
+        endDate: i2C1Start,
+        category: 'Databases',
+        capacity: 5
+      },
+      'i2c3'
+    ]);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    assert.equal(body.imported, 1);
+    assert.deepStrictEqual(body.errors[0], {
+      row: 2,
+      name: 'i2c2',
+      error: "End date can't be before or equal to the start date"
+    });
+    assert.equal(body.errors[1].row, 3);
+    assert.equal(body.errors[1].error, 'Incomplete body');
+    assert.equal(body.errors.length, 2);
+  }
+
+  {
+    console.log('i2 imports courses from a CSV');
+    const res = await sendRawRequest(
+      'POST',
+      `${ELEARNING_SERVICE_URL}/course/import`,
+      'text/csv',
+      [
+        'name,description,startDate,endDate,category,capacity',
+        `i2c2,"i2c2d, imported from a CSV",${i2C1Start},${i2C1End},Databases,10`,
+        `i2c3,i2c3d,${i2C1Start},${i2C1End},Databases,many`
+      ].join('\n')
+    );
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.deepStrictEqual(JSON.parse(text), {
+      imported: 1,
+      errors: [{ row: 2, name: 'i2c3', error: 'Incomplete body' }]
+    });
+  }
+
+  {
+    console.log('i2 views its courses (imported as pending)');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text)
+      .filter((course) => course.instructorId === i2Id)
+      .map((course) => ({ name: course.name, capacity: course.capacity, status: course.status }));
+    body.sort((a, b) => {
+      if (a.name === b.name) return 0;
+      if (a.name < b.name) return -1;
+      if (a.name > b.name) return 1;
+    });
+    assert.deepStrictEqual(body, [
+      { name: 'i2c1', capacity: 5, status: 'PENDING' },
+      { name: 'i2c2', capacity: 10, status: 'PENDING' }
+    ]);
+  }
+
+  await login('admin', 'admin');
+
+  {
+    console.log('admin imports courses from a CSV, one without an instructor');
+    const res = await sendRawRequest(
+      'POST',
+      `${ELEARNING_SERVICE_URL}/course/import`,
+      'text/csv',
+      [
+        'name,description,startDate,endDate,category,capacity,instructorId',
+        `i2c4,i2c4d,${i2C1Start},${i2C1End},Databases,5,${i2Id}`,
+        `i2c5,i2c5d,${i2C1Start},${i2C1End},Databases,5,`
+      ].join('\n')
+    );
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.deepStrictEqual(JSON.parse(text), {
+      imported: 1,
+      errors: [{ row: 2, name: 'i2c5', error: 'Missing or invalid instructorId' }]
+    });
+  }
+
+  let i2C1Id = undefined;
+  {
+    console.log('admin views available courses');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    i2C1Id = body.find((course) => course.name === 'i2c1').id;
+    const i2C4 = body.find((course) => course.name === 'i2c4');
+    assert.equal(i2C4.instructorId, i2Id);
+    assert.equal(i2C4.status, 'PENDING');
+  }
+
+  {
+    console.log('admin accepts i2c1');
+    const res = await sendRequest('PUT', `${ELEARNING_SERVICE_URL}/course/${i2C1Id}`, {
+      status: 'ACCEPTED'
+    });
+    console.log(await res.text());
+    assert.equal(res.status, 200);
+  }
+
+  await login('i2', 'i2123');
+
+  {
+    console.log('i2 tries to clone courses without a shift');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/clone`, {
+      fromDate: currentTimeSeconds(),
+      toDate: currentTimeSeconds() + 30 * 24 * 60 * 60
+    });
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 400);
+    assert.deepStrictEqual(JSON.parse(text), { message: 'Incomplete body' });
+  }
+
+  {
+    console.log('i2 tries to clone courses with toDate before fromDate');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/clone`, {
+      fromDate: currentTimeSeconds() + 30 * 24 * 60 * 60,
+      toDate: currentTimeSeconds(),
+      shift: 30 * 24 * 60 * 60
+    });
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 400);
+    assert.deepStrictEqual(JSON.parse(text), { message: 'toDate must be after fromDate' });
+  }
+
+  {
+    console.log('i2 tries to clone courses with a negative shift');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/clone`, {
+      fromDate: currentTimeSeconds(),
+      toDate: currentTimeSeconds() + 30 * 24 * 60 * 60,
+      shift: -1
+    });
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 400);
+    assert.deepStrictEqual(JSON.parse(text), { message: 'Shift must be a positive number' });
+  }
+
+  {
+    console.log('i2 clones its accepted courses starting within the next 30 days');
+    const res = await sendRequest('POST', `${ELEARNING_SERVICE_URL}/course/clone`, {
+      fromDate: currentTimeSeconds(),
+      toDate: currentTimeSeconds() + 30 * 24 * 60 * 60,
+      shift: 30 * 24 * 60 * 60
+    });
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.deepStrictEqual(JSON.parse(text), { clonedCourses: 1 });
+  }
+
+  {
+    console.log('i2 views its courses (i2c1 cloned as pending)');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text)
+      .filter((course) => course.name === 'i2c1')
+      .map((course) => ({ startDate: course.startDate, endDate: course.endDate, status: course.status }));
+    body.sort((a, b) => a.startDate - b.startDate);
+    assert.deepStrictEqual(body, [
+      { startDate: i2C1Start, endDate: i2C1End, status: 'ACCEPTED' },
+      { startDate: i2C1Start + 30 * 24 * 60 * 60, endDate: i2C1End + 30 * 24 * 60 * 60, status: 'PENDING' }
+    ]);
+  }
+
+  {
+    console.log('i2 exports its courses');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/export`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.ok(res.headers.get('content-type').startsWith('text/csv'));
+    const lines = text.trim().split('\n');
+    assert.equal(
+      lines[0],
+      'id,name,description,instructorid,instructorname,category,startdate,enddate,capacity,status,' +
+        'numberofenrollments,averagestars,numberofreviews'
+    );
+    assert.deepStrictEqual(lines.slice(1).map((line) => line.split(',')[1]).sort(), ['i2c1', 'i2c1', 'i2c2', 'i2c4']);
+  }
+
+  {
+    console.log('i2 tries to export the enrollments of i1c2');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/enrollment/export`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 404);
+    assert.deepStrictEqual(JSON.parse(text), { message: 'Could not find the specified course' });
+  }
+
+  await login('s1', 's1123');
+
+  {
+    console.log('s1 tries to export the reviews of i1c2');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/review/export`);
+    console.log(await res.text());
+    assert.equal(res.status, 403);
+  }
+
+  await login('i1', 'i1123');
+
+  {
+    console.log('i1 exports the enrollments of i1c2');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/enrollment/export`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.ok(res.headers.get('content-type').startsWith('text/csv'));
+    const lines = text.trim().split('\n');
+    assert.equal(lines[0], 'id,studentid,studentname,status,requestedat');
+    assert.deepStrictEqual(
+      lines.slice(1).map((line) => line.split(',').slice(2, 4)),
+      [
+        ['s1', 'ACCEPTED'],
+        ['s3', 'REJECTED'],
+        ['s4', 'ACCEPTED']
+      ]
+    );
+  }
+
+  {
+    console.log('i1 exports the reviews of i1c2 (none yet)');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/${i1C2Id}/review/export`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.equal(text.trim(), 'id,studentid,studentname,stars,body');
+  }
+
+  {
+    console.log('i1 tries to view the trending courses with an invalid limit');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/trending?limit=0`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 400);
+    assert.deepStrictEqual(JSON.parse(text), { message: 'limit must be between 1 and 100' });
+  }
+
+  {
+    console.log('i1 views the trending courses (i1c2 had the most recent accepted enrollments)');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/trending`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.deepStrictEqual(
+      JSON.parse(text).map((course) => course.name),
+      ['i1c2', 'i1c1']
+    );
+  }
+
+  {
+    console.log('i1 views the top trending course');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/trending?limit=1`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    const body = JSON.parse(text);
+    assert.equal(body.length, 1);
+    assert.equal(body[0].id, i1C2Id);
+    assert.equal(body[0].numberOfEnrollments, 2);
+  }
+
+  {
+    console.log('i1 views the top rated courses (none reviewed yet)');
+    const res = await sendRequest('GET', `${ELEARNING_SERVICE_URL}/course/top`);
+    const text = await res.text();
+    console.log(text);
+    assert.equal(res.status, 200);
+    assert.deepStrictEqual(JSON.parse(text), []);
+  }
+
   console.log('All tests passed');
 })();
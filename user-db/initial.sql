@@ -14,3 +14,28 @@ CREATE TABLE AppUser (
 );
 
 INSERT INTO AppUser(name, email, password, role, experience, bio, affiliation) VALUES ('admin', 'admin@admin.com', 'admin', 'ADMIN', 0, 'This is an admin account', 'Admin university');
+
+-- Login sessions, keyed by the SHA-256 hash of the opaque token
+CREATE TABLE AppSession (
+    tokenHash CHAR(64) PRIMARY KEY,
+    userId UUID NOT NULL REFERENCES AppUser (id) ON DELETE CASCADE,
+    expiresAt BIGINT NOT NULL
+);
+
+CREATE INDEX AppSession_userId ON AppSession (userId);
+
+-- Filters and keyset pagination of the admin user list, which is ordered by name
+CREATE INDEX AppUser_name_pattern ON AppUser (name text_pattern_ops);
+CREATE INDEX AppUser_role_name ON AppUser (role, name);
+CREATE INDEX AppUser_affiliation_name ON AppUser (affiliation, name);
+
+-- Events for other services, written in the transaction of the change and
+-- published to the broker by UserEventPublisher
+CREATE TABLE UserEventOutbox (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    type VARCHAR(32) NOT NULL,
+    userId UUID NOT NULL,
+    createdAt TIMESTAMP NOT NULL DEFAULT now()
+);
+
+CREATE INDEX UserEventOutbox_createdAt ON UserEventOutbox (createdAt);
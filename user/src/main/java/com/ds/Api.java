@@ -1,20 +1,38 @@
 package com.ds;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.LinkedList;
 import java.util.UUID;
 import java.util.regex.Pattern;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
 import com.ds.requests.*;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import jakarta.json.stream.JsonGenerator;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
@@ -22,9 +40,12 @@ import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.core.UriInfo;
 
 @Path("/")
 @Stateless
@@ -33,57 +54,72 @@ public class Api {
     @EJB
     private ApiDataSource dataSource;
 
+    @EJB
+    private SessionService sessionService;
+
+    @EJB
+    private UserEventPublisher userEventPublisher;
+
     @Context
     private HttpServletRequest servletRequest;
 
+    @Context
+    private UriInfo uriInfo;
+
+    private String serviceToken;
+
     private static final String ADMIN_ROLE = "ADMIN";
     private static final String INSTRUCTOR_ROLE = "INSTRUCTOR";
     private static final String STUDENT_ROLE = "STUDENT";
+    private static final String SERVICE_TOKEN_HEADER = "X-Service-Token";
+    private static final int MAX_INTERNAL_LOOKUP_IDS = 1000;
+    private static final int DEFAULT_USERS_PAGE_SIZE = 100;
+    private static final int MAX_USERS_PAGE_SIZE = 1000;
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int IMPORT_COPY_BUFFER_SIZE = 64 * 1024;
     private static final Pattern EMAIL_REGEX = Pattern.compile("^[a-zA-Z0-9_!#$%&’*+/=?`{|}~^.-]+@[a-zA-Z0-9.-]+$");
 
+    @PostConstruct
+    public void init() {
+        serviceToken = System.getenv("SERVICE_TOKEN");
+    }
+
     private Response withRole(String[] roles, Callback callback) throws SQLException {
         String authHeader = servletRequest.getHeader("Authorization");
         if (authHeader == null) {
             return Response.status(401).build();
         }
         String authToken = authHeader.replaceFirst("(?i)Basic ", "");
-        // Get id and password
-        // Auth token: base64(base64(id):base64(password))
-        String[] idPass = null;
-        String id = null;
-        String password = null;
-        try {
-            String decoded = new String(Base64.getDecoder().decode(authToken));
-            idPass = decoded.split(":", 2);
-            id = new String(Base64.getDecoder().decode(idPass[0]));
-            password = new String(Base64.getDecoder().decode(idPass[1]));
-        } catch (IllegalArgumentException e) {
-        }
-        if (idPass == null || id == null || password == null || idPass.length < 2) {
+        Session session = sessionService.find(authToken);
+        if (session == null) {
             return Response.status(401).entity(new MessageResponse("Invalid Auth token")).build();
         }
-        try (Connection conn = dataSource.getInstance().getConnection();
-                PreparedStatement st = conn
-                        .prepareStatement("SELECT * FROM AppUser WHERE id::text = ? AND password = ?")) {
-            st.setString(1, id);
-            st.setString(2, password);
-            ResultSet rs = st.executeQuery();
-            if (!rs.next()) {
-                return Response.status(401).build();
-            }
-            if (roles.length != 0) {
-                boolean found = false;
-                String myRole = rs.getString("role");
-                for (String role : roles) {
-                    if (role.equals(myRole)) {
-                        found = true;
-                        break;
-                    }
+        if (roles.length != 0) {
+            boolean found = false;
+            for (String role : roles) {
+                if (role.equals(session.role)) {
+                    found = true;
+                    break;
                 }
-                if (!found)
-                    return Response.status(403).build();
             }
-            return callback.apply(conn, rs);
+            if (!found)
+                return Response.status(403).build();
+        }
+        try (Connection conn = dataSource.getInstance().getConnection()) {
+            return callback.apply(conn, session);
+        }
+    }
+
+    private Response withServiceToken(ServiceCallback callback) throws SQLException {
+        String token = servletRequest.getHeader(SERVICE_TOKEN_HEADER);
+        // The internal API is disabled unless a token is configured
+        if (serviceToken == null || token == null)
+            return Response.status(401).build();
+        if (!MessageDigest.isEqual(serviceToken.getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8)))
+            return Response.status(403).build();
+        try (Connection conn = dataSource.getInstance().getConnection()) {
+            return callback.apply(conn);
         }
     }
 
@@ -94,18 +130,13 @@ public class Api {
             return withRole(new String[] { role }, callback);
     }
 
-    private String createToken(UUID id, String password) {
-        String encodedId = Base64.getEncoder().encodeToString(id.toString().getBytes());
-        String encodedPassword = Base64.getEncoder().encodeToString(password.getBytes());
-        return Base64.getEncoder().encodeToString((encodedId + ":" + encodedPassword).getBytes());
-    }
-
     @POST
     @Path("/login")
     public Response login(LoginRequest req) throws SQLException {
         try (Connection conn = dataSource.getInstance().getConnection();
                 PreparedStatement st = conn
-                        .prepareStatement("SELECT id FROM AppUser where (name = ? OR email = ?) AND password = ?")) {
+                        .prepareStatement(
+                                "SELECT id, role FROM AppUser where (name = ? OR email = ?) AND password = ?")) {
             st.setString(1, req.nameOrEmail);
             st.setString(2, req.nameOrEmail);
             st.setString(3, req.password);
@@ -113,7 +144,7 @@ public class Api {
             if (!rs.next()) {
                 return Response.status(401).entity(new MessageResponse("Invalid name/email or password")).build();
             }
-            String token = createToken(rs.getObject("id", UUID.class), req.password);
+            String token = sessionService.create(conn, rs.getObject("id", UUID.class), rs.getString("role"));
             return Response.ok().entity(new TokenResponse(token)).build();
         }
     }
@@ -138,28 +169,33 @@ public class Api {
         return (experience > 100 || experience < 0) ? "Invalid years of experience" : null;
     }
 
-    @POST
-    @Path("/register")
-    public Response register(UserUpdateRequest req) throws SQLException {
+    private String getInvalidRegistrationError(UserUpdateRequest req) {
         if (req.name == null || req.email == null || req.password == null || req.role == null
                 || (req.role.equals(INSTRUCTOR_ROLE) && req.experience == null)
-                || req.bio == null || req.affiliation == null) {
-            return Response.status(400).entity(new MessageResponse("Incomplete body")).build();
-        }
+                || req.bio == null || req.affiliation == null)
+            return "Incomplete body";
+        String err = null;
+        if ((err = getInvalidUserNameError(req.name)) != null)
+            return err;
+        if ((err = getInvalidAffiliationError(req.affiliation)) != null)
+            return err;
+        if ((err = getInvalidEmailError(req.email)) != null)
+            return err;
+        if ((err = getInvalidPasswordError(req.password)) != null)
+            return err;
+        if (!req.role.equals(INSTRUCTOR_ROLE) && !req.role.equals(STUDENT_ROLE))
+            return "Invalid role";
+        if (req.role.equals(INSTRUCTOR_ROLE) && (err = getInvalidExperienceError(req.experience)) != null)
+            return err;
+        return null;
+    }
 
+    @POST
+    @Path("/register")
+    public Response register(UserUpdateRequest req) throws SQLException {
         {
-            String err = null;
-            if ((err = getInvalidUserNameError(req.name)) != null)
-                return Response.status(400).entity(new MessageResponse(err)).build();
-            if ((err = getInvalidAffiliationError(req.affiliation)) != null)
-                return Response.status(400).entity(new MessageResponse(err)).build();
-            if ((err = getInvalidEmailError(req.email)) != null)
-                return Response.status(400).entity(new MessageResponse(err)).build();
-            if ((err = getInvalidPasswordError(req.password)) != null)
-                return Response.status(400).entity(new MessageResponse(err)).build();
-            if (!req.role.equals(INSTRUCTOR_ROLE) && !req.role.equals(STUDENT_ROLE))
-                return Response.status(400).entity(new MessageResponse("Invalid role")).build();
-            if (req.role.equals(INSTRUCTOR_ROLE) && (err = getInvalidExperienceError(req.experience)) != null)
+            String err = getInvalidRegistrationError(req);
+            if (err != null)
                 return Response.status(400).entity(new MessageResponse(err)).build();
         }
 
@@ -223,33 +259,347 @@ public class Api {
         };
     }
 
+    // Bulk registration of users by admins. Rows are validated like /register
+    // and streamed with COPY into a staging table, which is then merged into
+    // AppUser; rows that are invalid, repeat a name or email of an earlier row
+    // or conflict with an existing user are reported by row number.
+    @POST
+    @Path("/users/import")
+    @Consumes("text/csv")
+    public Response importUsersCsv(InputStream body) throws SQLException {
+        return withRole(ADMIN_ROLE, (conn, _session) -> {
+            try {
+                CsvReader reader = new CsvReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+                ArrayList<String> header = reader.readRecord();
+                if (header == null)
+                    return Response.status(400).entity(new MessageResponse("Empty body")).build();
+                return importUsers(conn, () -> {
+                    ArrayList<String> record;
+                    do {
+                        record = reader.readRecord();
+                    } while (record != null && record.size() == 1 && record.get(0).isEmpty());
+                    if (record == null)
+                        return null;
+                    UserUpdateRequest req = new UserUpdateRequest();
+                    for (int i = 0; i < header.size() && i < record.size(); ++i) {
+                        String value = record.get(i);
+                        switch (header.get(i).trim()) {
+                            case "name" -> req.name = value;
+                            case "email" -> req.email = value;
+                            case "password" -> req.password = value;
+                            case "role" -> req.role = value;
+                            case "experience" -> req.experience = value.isEmpty() ? null : parseExperience(value);
+                            case "bio" -> req.bio = value;
+                            case "affiliation" -> req.affiliation = value;
+                            default -> {
+                            }
+                        }
+                    }
+                    return req;
+                });
+            } catch (IOException e) {
+                return Response.status(400).entity(new MessageResponse("Invalid CSV: " + e.getMessage())).build();
+            }
+        });
+    }
+
+    @POST
+    @Path("/users/import")
+    @Consumes("application/x-ndjson")
+    public Response importUsersNdjson(InputStream body) throws SQLException {
+        return withRole(ADMIN_ROLE, (conn, _session) -> {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+            try {
+                return importUsers(conn, () -> {
+                    String line;
+                    do {
+                        line = reader.readLine();
+                    } while (line != null && line.isBlank());
+                    if (line == null)
+                        return null;
+                    UserUpdateRequest req = new UserUpdateRequest();
+                    try (JsonReader jsonReader = Json.createReader(new StringReader(line))) {
+                        JsonObject obj = jsonReader.readObject();
+                        req.name = obj.getString("name", null);
+                        req.email = obj.getString("email", null);
+                        req.password = obj.getString("password", null);
+                        req.role = obj.getString("role", null);
+                        if (obj.get("experience") instanceof JsonNumber experience)
+                            req.experience = experience.intValue();
+                        req.bio = obj.getString("bio", null);
+                        req.affiliation = obj.getString("affiliation", null);
+                    } catch (JsonException e) {
+                        // Reported as an incomplete row
+                    }
+                    return req;
+                });
+            } catch (IOException e) {
+                return Response.status(400).entity(new MessageResponse("Invalid body: " + e.getMessage())).build();
+            }
+        });
+    }
+
+    // Years of experience that are not a number are reported as invalid
+    private Integer parseExperience(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void writeCsvField(StringBuilder line, String value) {
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private Response importUsers(Connection conn, ImportRowReader rows) throws SQLException, IOException {
+        ArrayList<ImportErrorResponse> rowErrors = new ArrayList<>();
+        int imported;
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement st = conn.prepareStatement("""
+                    CREATE TEMP TABLE ImportUser (
+                        rowNumber INTEGER NOT NULL,
+                        name VARCHAR(255) NOT NULL,
+                        email VARCHAR(255) NOT NULL,
+                        password VARCHAR(255) NOT NULL,
+                        role role NOT NULL,
+                        experience SMALLINT NOT NULL,
+                        bio TEXT NOT NULL,
+                        affiliation VARCHAR(255) NOT NULL
+                    ) ON COMMIT DROP""")) {
+                st.executeUpdate();
+            }
+
+            CopyIn copyIn = conn.unwrap(PGConnection.class).getCopyAPI()
+                    .copyIn("COPY ImportUser FROM STDIN (FORMAT csv)");
+            try {
+                StringBuilder buffer = new StringBuilder();
+                int rowNumber = 0;
+                UserUpdateRequest req;
+                while ((req = rows.next()) != null) {
+                    ++rowNumber;
+                    String err = getInvalidRegistrationError(req);
+                    if (err != null) {
+                        rowErrors.add(new ImportErrorResponse(rowNumber, req.name, req.email, err));
+                        continue;
+                    }
+                    buffer.append(rowNumber).append(',');
+                    writeCsvField(buffer, req.name);
+                    buffer.append(',');
+                    writeCsvField(buffer, req.email);
+                    buffer.append(',');
+                    writeCsvField(buffer, req.password);
+                    buffer.append(',').append(req.role).append(',')
+                            .append(req.role.equals(INSTRUCTOR_ROLE) ? req.experience : 0).append(',');
+                    writeCsvField(buffer, req.bio);
+                    buffer.append(',');
+                    writeCsvField(buffer, req.affiliation);
+                    buffer.append('\n');
+                    if (buffer.length() >= IMPORT_COPY_BUFFER_SIZE) {
+                        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+                        copyIn.writeToCopy(bytes, 0, bytes.length);
+                        buffer.setLength(0);
+                    }
+                }
+                byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+                copyIn.writeToCopy(bytes, 0, bytes.length);
+                copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive())
+                    copyIn.cancelCopy();
+            }
+
+            // Only the first row with a given name or email is imported
+            try (PreparedStatement st = conn.prepareStatement("""
+                    DELETE FROM ImportUser
+                    WHERE rowNumber IN (
+                        SELECT rowNumber FROM (
+                            SELECT
+                                rowNumber,
+                                row_number() OVER (PARTITION BY name ORDER BY rowNumber) AS nameRank,
+                                row_number() OVER (PARTITION BY email ORDER BY rowNumber) AS emailRank
+                            FROM ImportUser) AS Ranked
+                        WHERE nameRank > 1 OR emailRank > 1)
+                    RETURNING rowNumber, name, email""")) {
+                ResultSet rs = st.executeQuery();
+                while (rs.next())
+                    rowErrors.add(new ImportErrorResponse(rs.getInt("rowNumber"), rs.getString("name"),
+                            rs.getString("email"), "Duplicate name or email in the import"));
+            }
+
+            // Both the insert and the conflict check see AppUser as it was
+            // before the statement
+            imported = 0;
+            try (PreparedStatement st = conn.prepareStatement("""
+                    WITH Inserted AS (
+                        INSERT INTO AppUser (name, email, password, role, experience, bio, affiliation)
+                        SELECT name, email, password, role, experience, bio, affiliation
+                        FROM ImportUser
+                        ORDER BY rowNumber
+                        ON CONFLICT DO NOTHING
+                        RETURNING name)
+                    SELECT
+                        ImportUser.rowNumber,
+                        ImportUser.name,
+                        ImportUser.email,
+                        Inserted.name IS NOT NULL AS inserted,
+                        EXISTS (SELECT 1 FROM AppUser WHERE AppUser.name = ImportUser.name) AS nameExists
+                    FROM ImportUser LEFT JOIN Inserted ON Inserted.name = ImportUser.name""")) {
+                ResultSet rs = st.executeQuery();
+                while (rs.next()) {
+                    if (rs.getBoolean("inserted")) {
+                        ++imported;
+                        continue;
+                    }
+                    rowErrors.add(new ImportErrorResponse(rs.getInt("rowNumber"), rs.getString("name"),
+                            rs.getString("email"), rs.getBoolean("nameExists")
+                                    ? "A user with this name already exists"
+                                    : "A user with this email already exists"));
+                }
+            }
+            conn.commit();
+        } catch (SQLException | IOException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        rowErrors.sort((a, b) -> Integer.compare(a.row, b.row));
+        final int nImported = imported;
+        return Response.ok().entity(new ImportReportResponse() {
+            {
+                imported = nImported;
+                errors = rowErrors;
+            }
+        }).build();
+    }
+
     @GET
     @Path("/user")
     public Response getMyUser() throws SQLException {
-        return withRole("*", (_conn, rs) -> {
-            return Response.ok().entity(getUserResponse(rs)).build();
+        return withRole("*", (conn, session) -> {
+            try (PreparedStatement st = conn.prepareStatement(
+                    "SELECT id, name, email, role, experience, bio, affiliation FROM AppUser WHERE id = ?")) {
+                st.setObject(1, session.userId);
+                ResultSet rs = st.executeQuery();
+                if (!rs.next())
+                    return Response.status(401).build();
+                return Response.ok().entity(getUserResponse(rs)).build();
+            }
         });
     }
 
+    private String escapeLikeString(String likeString) {
+        return likeString.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    // Lists users ordered by name. All matching users are written straight
+    // from the ResultSet unless a page is requested with `limit` or `after`.
+    // Pages are at most MAX_USERS_PAGE_SIZE long and continue after the name
+    // given in `after`; the next page's URL is returned in the Link header.
     @GET
     @Path("/users")
-    public Response getAllUser() throws SQLException {
-        return withRole(ADMIN_ROLE, (conn, _rs) -> {
+    public Response getAllUser(@QueryParam("role") String role, @QueryParam("affiliation") String affiliation,
+            @QueryParam("name") String name, @QueryParam("after") String after, @QueryParam("limit") Integer limit)
+            throws SQLException {
+        return withRole(ADMIN_ROLE, (conn, _session) -> {
+            if (role != null && !role.equals(ADMIN_ROLE) && !role.equals(INSTRUCTOR_ROLE)
+                    && !role.equals(STUDENT_ROLE))
+                return Response.status(400).entity(new MessageResponse("Invalid role")).build();
+            if (limit != null && (limit < 1 || limit > MAX_USERS_PAGE_SIZE))
+                return Response.status(400)
+                        .entity(new MessageResponse("Limit must be between 1 and " + MAX_USERS_PAGE_SIZE)).build();
+
+            StringBuilder query = new StringBuilder(
+                    "SELECT id, name, email, role, experience, bio, affiliation FROM AppUser");
+            ArrayList<String> where = new ArrayList<>();
+            LinkedList<Binding> bindings = new LinkedList<>();
+            if (role != null)
+                where.add("role = '" + role + "'");
+            if (affiliation != null) {
+                where.add("affiliation = ?");
+                bindings.addLast((i, st) -> st.setString(i, affiliation));
+            }
+            if (name != null) {
+                where.add("name LIKE ? ESCAPE '!'");
+                bindings.addLast((i, st) -> st.setString(i, escapeLikeString(name) + "%"));
+            }
+            if (after != null) {
+                where.add("name > ?");
+                bindings.addLast((i, st) -> st.setString(i, after));
+            }
+            if (!where.isEmpty())
+                query.append(" WHERE " + String.join(" AND ", where));
+            query.append(" ORDER BY name");
+
+            if (limit == null && after == null) {
+                // The connection of withRole is closed before the body is written
+                StreamingOutput output = (out) -> {
+                    try (Connection streamConn = dataSource.getInstance().getConnection()) {
+                        // Postgres only honors the fetch size within a transaction
+                        streamConn.setAutoCommit(false);
+                        try (PreparedStatement st = streamConn.prepareStatement(query.toString())) {
+                            applyBindings(st, bindings);
+                            st.setFetchSize(STREAM_FETCH_SIZE);
+                            writeUsers(out, st.executeQuery());
+                        }
+                        streamConn.commit();
+                    } catch (SQLException e) {
+                        throw new IOException(e);
+                    }
+                };
+                return Response.ok(output).build();
+            }
+
+            int pageSize = limit != null ? limit : DEFAULT_USERS_PAGE_SIZE;
+            query.append(" LIMIT " + (pageSize + 1));
             ArrayList<UserResponse> users = new ArrayList<>();
-            try (PreparedStatement st = conn
-                    .prepareStatement("SELECT id, name, email, role, experience, bio, affiliation FROM AppUser")) {
+            boolean hasMore = false;
+            try (PreparedStatement st = conn.prepareStatement(query.toString())) {
+                applyBindings(st, bindings);
                 ResultSet rs = st.executeQuery();
-                while (rs.next())
+                while (rs.next()) {
+                    if (users.size() == pageSize) {
+                        hasMore = true;
+                        break;
+                    }
                     users.add(getUserResponse(rs));
+                }
             }
-            return Response.ok().entity(users).build();
+            Response.ResponseBuilder res = Response.ok().entity(users);
+            if (hasMore)
+                res.link(uriInfo.getRequestUriBuilder().replaceQueryParam("after", users.get(users.size() - 1).name)
+                        .build(), "next");
+            return res.build();
         });
     }
 
+    private void writeUsers(OutputStream out, ResultSet rs) throws SQLException {
+        try (JsonGenerator gen = Json.createGenerator(out)) {
+            gen.writeStartArray();
+            while (rs.next()) {
+                String role = rs.getString("role");
+                gen.writeStartObject()
+                        .write("id", rs.getString("id"))
+                        .write("name", rs.getString("name"))
+                        .write("email", rs.getString("email"))
+                        .write("role", role);
+                if (role.equals(INSTRUCTOR_ROLE))
+                    gen.write("experience", rs.getInt("experience"));
+                gen.write("bio", rs.getString("bio"))
+                        .write("affiliation", rs.getString("affiliation"))
+                        .writeEnd();
+            }
+            gen.writeEnd();
+        }
+    }
+
     @GET
     @Path("/user/{id}")
     public Response getUser(@PathParam("id") UUID id) throws SQLException {
-        return withRole(ADMIN_ROLE, (conn, _rs) -> {
+        return withRole(ADMIN_ROLE, (conn, _session) -> {
             try (PreparedStatement st = conn
                     .prepareStatement(
                             "SELECT id, name, email, role, experience, bio, affiliation FROM AppUser WHERE id = ?")) {
@@ -263,20 +613,16 @@ public class Api {
         });
     }
 
-    @GET
-    @Path("/instructor/{id}")
-    public Response getInstructor(@PathParam("id") UUID id) throws SQLException {
-        return withRole("*", (conn, _rs) -> {
-            try (PreparedStatement st = conn
-                    .prepareStatement(
-                            "SELECT id, name, experience, bio, affiliation FROM AppUser WHERE id = ? AND role = '"
-                                    + INSTRUCTOR_ROLE + "'")) {
-                st.setObject(1, id);
-                ResultSet rs = st.executeQuery();
-                if (!rs.next())
-                    return Response.status(404).entity(new MessageResponse("Could not find the specified instructor"))
-                            .build();
-                return Response.status(200).entity(new InstructorResponse() {
+    private ArrayList<InstructorResponse> findInstructors(Connection conn, UUID[] ids) throws SQLException {
+        ArrayList<InstructorResponse> instructors = new ArrayList<>();
+        try (PreparedStatement st = conn
+                .prepareStatement(
+                        "SELECT id, name, experience, bio, affiliation FROM AppUser WHERE id = ANY(?) AND role = '"
+                                + INSTRUCTOR_ROLE + "'")) {
+            st.setArray(1, conn.createArrayOf("uuid", ids));
+            ResultSet rs = st.executeQuery();
+            while (rs.next()) {
+                instructors.add(new InstructorResponse() {
                     {
                         id = rs.getObject("id", UUID.class);
                         name = rs.getString("name");
@@ -284,46 +630,131 @@ public class Api {
                         bio = rs.getString("bio");
                         affiliation = rs.getString("affiliation");
                     }
-                }).build();
+                });
             }
-        });
+        }
+        return instructors;
     }
 
-    @GET
-    @Path("/student/{id}")
-    public Response getStudent(@PathParam("id") UUID id) throws SQLException {
-        return withRole("*", (conn, _rs) -> {
-            try (PreparedStatement st = conn
-                    .prepareStatement(
-                            "SELECT id, name, bio, affiliation FROM AppUser WHERE id = ? AND role = '" + STUDENT_ROLE
-                                    + "'")) {
-                st.setObject(1, id);
-                ResultSet rs = st.executeQuery();
-                if (!rs.next())
-                    return Response.status(404).entity(new MessageResponse("Could not find the specified student"))
-                            .build();
-                return Response.status(200).entity(new StudentResponse() {
+    private ArrayList<StudentResponse> findStudents(Connection conn, UUID[] ids) throws SQLException {
+        ArrayList<StudentResponse> students = new ArrayList<>();
+        try (PreparedStatement st = conn
+                .prepareStatement(
+                        "SELECT id, name, bio, affiliation FROM AppUser WHERE id = ANY(?) AND role = '" + STUDENT_ROLE
+                                + "'")) {
+            st.setArray(1, conn.createArrayOf("uuid", ids));
+            ResultSet rs = st.executeQuery();
+            while (rs.next()) {
+                students.add(new StudentResponse() {
                     {
                         id = rs.getObject("id", UUID.class);
                         name = rs.getString("name");
                         bio = rs.getString("bio");
                         affiliation = rs.getString("affiliation");
                     }
-                }).build();
+                });
             }
+        }
+        return students;
+    }
+
+    private Response getInstructorResponse(Connection conn, UUID id) throws SQLException {
+        ArrayList<InstructorResponse> instructors = findInstructors(conn, new UUID[] { id });
+        if (instructors.isEmpty())
+            return Response.status(404).entity(new MessageResponse("Could not find the specified instructor"))
+                    .build();
+        return Response.status(200).entity(instructors.get(0)).build();
+    }
+
+    private Response getStudentResponse(Connection conn, UUID id) throws SQLException {
+        ArrayList<StudentResponse> students = findStudents(conn, new UUID[] { id });
+        if (students.isEmpty())
+            return Response.status(404).entity(new MessageResponse("Could not find the specified student"))
+                    .build();
+        return Response.status(200).entity(students.get(0)).build();
+    }
+
+    @GET
+    @Path("/instructor/{id}")
+    public Response getInstructor(@PathParam("id") UUID id) throws SQLException {
+        return withRole("*", (conn, _session) -> {
+            return getInstructorResponse(conn, id);
+        });
+    }
+
+    @GET
+    @Path("/student/{id}")
+    public Response getStudent(@PathParam("id") UUID id) throws SQLException {
+        return withRole("*", (conn, _session) -> {
+            return getStudentResponse(conn, id);
+        });
+    }
+
+    // Lookups for other services, authenticated by the shared service token
+    // instead of re-authenticating the end user on every call
+
+    @GET
+    @Path("/internal/instructor/{id}")
+    public Response getInstructorInternal(@PathParam("id") UUID id) throws SQLException {
+        return withServiceToken((conn) -> {
+            return getInstructorResponse(conn, id);
+        });
+    }
+
+    @GET
+    @Path("/internal/student/{id}")
+    public Response getStudentInternal(@PathParam("id") UUID id) throws SQLException {
+        return withServiceToken((conn) -> {
+            return getStudentResponse(conn, id);
+        });
+    }
+
+    // Batch lookups; ids that don't match a user of the role are left out
+    @POST
+    @Path("/internal/instructors")
+    public Response listInstructorsInternal(ArrayList<UUID> ids) throws SQLException {
+        if (ids == null || ids.size() > MAX_INTERNAL_LOOKUP_IDS || ids.contains(null))
+            return Response.status(400).entity(new MessageResponse("Invalid list of ids")).build();
+        return withServiceToken((conn) -> {
+            return Response.status(200).entity(findInstructors(conn, ids.toArray(new UUID[0]))).build();
+        });
+    }
+
+    @POST
+    @Path("/internal/students")
+    public Response listStudentsInternal(ArrayList<UUID> ids) throws SQLException {
+        if (ids == null || ids.size() > MAX_INTERNAL_LOOKUP_IDS || ids.contains(null))
+            return Response.status(400).entity(new MessageResponse("Invalid list of ids")).build();
+        return withServiceToken((conn) -> {
+            return Response.status(200).entity(findStudents(conn, ids.toArray(new UUID[0]))).build();
         });
     }
 
     @DELETE
     @Path("/user/{id}")
     public Response deleteUser(@PathParam("id") UUID id) throws SQLException {
-        return withRole(ADMIN_ROLE, (conn, _rs) -> {
-            try (PreparedStatement st = conn.prepareStatement("DELETE FROM AppUser WHERE id = ?")) {
-                st.setObject(1, id);
-                if (st.executeUpdate() == 0)
-                    return Response.status(404).entity(new MessageResponse("Could not find the specified user"))
-                            .build();
+        return withRole(ADMIN_ROLE, (conn, _session) -> {
+            // The user's data in elearning is cleaned up asynchronously on the
+            // USER_DELETED event
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement st = conn.prepareStatement("DELETE FROM AppUser WHERE id = ?")) {
+                    st.setObject(1, id);
+                    if (st.executeUpdate() == 0) {
+                        conn.rollback();
+                        return Response.status(404).entity(new MessageResponse("Could not find the specified user"))
+                                .build();
+                    }
+                }
+                userEventPublisher.add(conn, UserEventPublisher.USER_DELETED, id);
+                sessionService.revokeAll(conn, id);
+                conn.commit();
                 return Response.ok().build();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
         });
     }
@@ -372,10 +803,12 @@ public class Api {
             bindings.addLast((i, st) -> st.setString(i, req.password));
         }
 
+        boolean roleChanged = false;
         if (role.equals(ADMIN_ROLE) && sourceId != targetId && req.role != null) {
             if (!req.role.equals(INSTRUCTOR_ROLE) && !req.role.equals(STUDENT_ROLE) && !req.role.equals(ADMIN_ROLE))
                 return Response.status(400).entity(new MessageResponse("Invalid role")).build();
             updates.add("role = '" + req.role + "'");
+            roleChanged = true;
         }
 
         if ((role.equals(ADMIN_ROLE) || role.equals(INSTRUCTOR_ROLE)) && req.experience != null) {
@@ -401,10 +834,19 @@ public class Api {
             st.setObject(i++, targetId);
             if (st.executeUpdate() == 0)
                 return Response.status(404).entity(new MessageResponse("Could not find the specified user")).build();
-            if (req.password == null) {
-                return Response.ok().build();
-            } else {
-                String token = createToken(targetId, req.password);
+        }
+        // Sessions carry the role, and a password change must log out every
+        // other session of the user
+        if (roleChanged || req.password != null)
+            sessionService.revokeAll(conn, targetId);
+        if (req.password == null) {
+            return Response.ok().build();
+        } else {
+            try (PreparedStatement st = conn.prepareStatement("SELECT role FROM AppUser WHERE id = ?")) {
+                st.setObject(1, targetId);
+                ResultSet rs = st.executeQuery();
+                rs.next();
+                String token = sessionService.create(conn, targetId, rs.getString("role"));
                 return Response.ok().entity(new TokenResponse(token)).build();
             }
         }
@@ -413,24 +855,23 @@ public class Api {
     @PUT
     @Path("/user/{id}")
     public Response updateUser(@PathParam("id") UUID id, UserUpdateRequest req) throws SQLException {
-        return withRole(ADMIN_ROLE, (conn, rs) -> {
-            return updateUser(conn, ADMIN_ROLE, rs.getObject("id", UUID.class), id, req);
+        return withRole(ADMIN_ROLE, (conn, session) -> {
+            return updateUser(conn, ADMIN_ROLE, session.userId, id, req);
         });
     }
 
     @PUT
     @Path("/user")
     public Response updateMyUser(UserUpdateRequest req) throws SQLException {
-        return withRole("*", (conn, rs) -> {
-            UUID myId = rs.getObject("id", UUID.class);
-            return updateUser(conn, "*", myId, myId, req);
+        return withRole("*", (conn, session) -> {
+            return updateUser(conn, "*", session.userId, session.userId, req);
         });
     }
 
     @GET
     @Path("/user-count")
     public Response countUsers() throws SQLException {
-        return withRole(ADMIN_ROLE, (conn, _rs) -> {
+        return withRole(ADMIN_ROLE, (conn, _session) -> {
             Integer noStudents = 0;
             Integer noInstructors = 0;
             Integer noAdmins = 0;
@@ -502,6 +943,25 @@ class MessageResponse {
     }
 }
 
+class ImportErrorResponse {
+    public Integer row;
+    public String name;
+    public String email;
+    public String error;
+
+    public ImportErrorResponse(Integer row, String name, String email, String error) {
+        this.row = row;
+        this.name = name;
+        this.email = email;
+        this.error = error;
+    }
+}
+
+class ImportReportResponse {
+    public Integer imported;
+    public ArrayList<ImportErrorResponse> errors;
+}
+
 class TokenResponse {
     public String token;
 
@@ -514,6 +974,15 @@ interface Binding {
     public void apply(int idx, PreparedStatement st) throws SQLException;
 }
 
+interface ImportRowReader {
+    // Returns null after the last row
+    public UserUpdateRequest next() throws IOException;
+}
+
 interface Callback {
-    public Response apply(Connection conn, ResultSet rs) throws SQLException;
+    public Response apply(Connection conn, Session session) throws SQLException;
+}
+
+interface ServiceCallback {
+    public Response apply(Connection conn) throws SQLException;
 }
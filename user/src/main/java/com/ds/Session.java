@@ -0,0 +1,15 @@
+package com.ds;
+
+import java.util.UUID;
+
+public class Session {
+    public final UUID userId;
+    public final String role;
+    public final long expiresAt;
+
+    public Session(UUID userId, String role, long expiresAt) {
+        this.userId = userId;
+        this.role = role;
+        this.expiresAt = expiresAt;
+    }
+}
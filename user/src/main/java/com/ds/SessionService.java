@@ -0,0 +1,131 @@
+package com.ds;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+// Opaque session tokens issued on login. Sessions are kept in memory, keyed by
+// the SHA-256 hash of the token, and optionally persisted in AppSession so
+// that they survive restarts.
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class SessionService {
+    @EJB
+    private ApiDataSource dataSource;
+
+    private ConcurrentHashMap<String, Session> sessions;
+    private SecureRandom random;
+    private boolean persistent;
+    private long ttlMillis;
+
+    @PostConstruct
+    public void init() {
+        sessions = new ConcurrentHashMap<>();
+        random = new SecureRandom();
+        persistent = System.getenv("SESSION_PERSISTENCE") == null
+                || System.getenv("SESSION_PERSISTENCE").equalsIgnoreCase("true");
+        ttlMillis = (System.getenv("SESSION_TTL_HOURS") != null
+                ? Long.parseLong(System.getenv("SESSION_TTL_HOURS"))
+                : 168) * 3600 * 1000;
+        if (persistent)
+            load();
+    }
+
+    private void load() {
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement("""
+                        SELECT AppSession.tokenHash, AppSession.userId, AppSession.expiresAt, AppUser.role
+                        FROM AppSession JOIN AppUser ON AppUser.id = AppSession.userId
+                        WHERE AppSession.expiresAt > ?""")) {
+            st.setLong(1, System.currentTimeMillis());
+            ResultSet rs = st.executeQuery();
+            while (rs.next())
+                sessions.put(rs.getString("tokenHash"), new Session(rs.getObject("userId", UUID.class),
+                        rs.getString("role"), rs.getLong("expiresAt")));
+        } catch (SQLException e) {
+            System.err.println("Error loading sessions:");
+            e.printStackTrace();
+        }
+    }
+
+    private String hash(String token) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String create(Connection conn, UUID userId, String role) throws SQLException {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        String tokenHash = hash(token);
+        Session session = new Session(userId, role, System.currentTimeMillis() + ttlMillis);
+        if (persistent) {
+            try (PreparedStatement st = conn
+                    .prepareStatement("INSERT INTO AppSession (tokenHash, userId, expiresAt) VALUES (?, ?, ?)")) {
+                st.setString(1, tokenHash);
+                st.setObject(2, userId);
+                st.setLong(3, session.expiresAt);
+                st.executeUpdate();
+            }
+        }
+        sessions.put(tokenHash, session);
+        return token;
+    }
+
+    // Returns null if the token is unknown or expired
+    public Session find(String token) {
+        Session session = sessions.get(hash(token));
+        if (session == null || session.expiresAt <= System.currentTimeMillis())
+            return null;
+        return session;
+    }
+
+    // Revokes every session of the user, e.g. after a password or role change
+    public void revokeAll(Connection conn, UUID userId) throws SQLException {
+        sessions.values().removeIf((session) -> session.userId.equals(userId));
+        if (persistent) {
+            try (PreparedStatement st = conn.prepareStatement("DELETE FROM AppSession WHERE userId = ?")) {
+                st.setObject(1, userId);
+                st.executeUpdate();
+            }
+        }
+    }
+
+    @Schedule(hour = "*", minute = "20", persistent = false)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf((session) -> session.expiresAt <= now);
+        if (!persistent)
+            return;
+        try (Connection conn = dataSource.getInstance().getConnection();
+                PreparedStatement st = conn.prepareStatement("DELETE FROM AppSession WHERE expiresAt <= ?")) {
+            st.setLong(1, now);
+            st.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error evicting sessions:");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.ds;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.jms.ConnectionFactory;
+import jakarta.jms.JMSContext;
+import jakarta.jms.JMSProducer;
+import jakarta.jms.JMSRuntimeException;
+import jakarta.jms.Queue;
+
+// Publishes the events of UserEventOutbox to the user-events queue. Events are
+// written in the same transaction as the change they describe, so none are
+// lost if the broker is unavailable; they are sent at least once, tagged with
+// the event id, and deleted once the broker has accepted them.
+// USER_DELETED:userId
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class UserEventPublisher {
+    public static final String USER_DELETED = "USER_DELETED";
+    public static final String EVENT_ID_PROPERTY = "eventId";
+
+    @Resource(lookup = "java:/jms/UserEventProducerFactory")
+    private ConnectionFactory connectionFactory;
+
+    @Resource(lookup = "java:/queue/user-events")
+    private Queue queue;
+
+    @EJB
+    private ApiDataSource dataSource;
+
+    private int batchSize;
+    private AtomicBoolean publishing;
+
+    @PostConstruct
+    public void init() {
+        batchSize = System.getenv("USER_EVENT_BATCH_SIZE") != null
+                ? Integer.parseInt(System.getenv("USER_EVENT_BATCH_SIZE"))
+                : 100;
+        publishing = new AtomicBoolean(false);
+    }
+
+    // Must be called within the transaction of the change
+    public void add(Connection conn, String type, UUID userId) throws SQLException {
+        try (PreparedStatement st = conn
+                .prepareStatement("INSERT INTO UserEventOutbox (type, userId) VALUES (?, ?)")) {
+            st.setString(1, type);
+            st.setObject(2, userId);
+            st.executeUpdate();
+        }
+    }
+
+    @Schedule(hour = "*", minute = "*", second = "*/5", persistent = false)
+    public void publishPending() {
+        // A run may take longer than the schedule's period
+        if (!publishing.compareAndSet(false, true))
+            return;
+        try (Connection conn = dataSource.getInstance().getConnection();
+                JMSContext context = connectionFactory.createContext(getEnv("JMS_USER", "admin"),
+                        getEnv("JMS_PASSWORD", "admin"), JMSContext.SESSION_TRANSACTED)) {
+            JMSProducer producer = context.createProducer();
+            conn.setAutoCommit(false);
+            int published;
+            do {
+                published = publishBatch(conn, context, producer);
+            } while (published == batchSize);
+        } catch (SQLException | JMSRuntimeException e) {
+            System.err.println("Error publishing user events:");
+            e.printStackTrace();
+        } finally {
+            publishing.set(false);
+        }
+    }
+
+    // The outbox rows stay locked until the broker has committed their messages
+    private int publishBatch(Connection conn, JMSContext context, JMSProducer producer) throws SQLException {
+        int published = 0;
+        try {
+            try (PreparedStatement st = conn.prepareStatement("""
+                    DELETE FROM UserEventOutbox
+                    WHERE id IN (
+                        SELECT id FROM UserEventOutbox
+                        ORDER BY createdAt
+                        LIMIT ?
+                        FOR UPDATE SKIP LOCKED)
+                    RETURNING id, type, userId""")) {
+                st.setInt(1, batchSize);
+                ResultSet rs = st.executeQuery();
+                while (rs.next()) {
+                    producer.setProperty(EVENT_ID_PROPERTY, rs.getString("id"))
+                            .send(queue, rs.getString("type") + ":" + rs.getString("userId"));
+                    ++published;
+                }
+            }
+            context.commit();
+        } catch (SQLException | JMSRuntimeException e) {
+            context.rollback();
+            conn.rollback();
+            throw e;
+        }
+        // Messages sent but not deleted here are sent again, which consumers
+        // must tolerate
+        conn.commit();
+        return published;
+    }
+
+    private String getEnv(String name, String defaultValue) {
+        return System.getenv(name) != null ? System.getenv(name) : defaultValue;
+    }
+}